@@ -1,5 +1,6 @@
 package io.github.lunasaw.domain;
 
+import io.github.lunasaw.util.serializer.RedisTypeAlias;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,6 +14,7 @@ import lombok.NoArgsConstructor;
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
+@RedisTypeAlias("user")
 public class User {
 
     private Long userId;
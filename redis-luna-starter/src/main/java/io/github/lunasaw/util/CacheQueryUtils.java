@@ -1,24 +1,43 @@
 package io.github.lunasaw.util;
 
 import com.alibaba.fastjson.TypeReference;
-import com.google.common.cache.CacheLoader;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import io.github.lunasaw.util.bloom.IdBloomFilter;
+import io.github.lunasaw.util.cache.CacheEntry;
+import io.github.lunasaw.util.cache.CacheStore;
+import io.github.lunasaw.util.cache.HashCacheStore;
+import io.github.lunasaw.util.cache.KeyCacheStore;
 import io.github.lunasaw.util.inter.Namespace;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.MapUtils;
+import org.springframework.cache.support.NullValue;
 
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * 解决缓存穿透
  */
+@Slf4j
 public class CacheQueryUtils {
     @Setter
     @Getter
@@ -27,11 +46,56 @@ public class CacheQueryUtils {
         private List<K> keys;
         private Namespace namespace;
         private int expiredTime;
+        /**
+         * 过期时间(秒)随机增加[0, expiredJitter], 分散过期时间
+         */
+        private int expiredJitter;
         private SQL<K, T> sql;
         private TypeRef typeReference;
         private Validate<T> validate;
         private KeyGenerate<K, T> keyGenerate;
+        /**
+         * 库中不存在的id写入的mock数据 为null时写入单字节的空值标记
+         */
         private Mock<T> mock;
+        /**
+         * 已知id的布隆过滤器 一定不存在的id不查缓存也不查库
+         */
+        private IdBloomFilter<K> bloomFilter;
+        /**
+         * 租约时长(毫秒) 大于0且传入RedisLeaseUtil时开启租约模式, 多个节点同时未命中时只有租约持有者查库
+         */
+        private long leaseTime;
+        /**
+         * 未获取到租约时等待持有者回填缓存的最长时间(毫秒) 超时后自行查库
+         */
+        private long leaseWaitTime = 200;
+        /**
+         * 等待期间轮询缓存的间隔(毫秒)
+         */
+        private long leasePollInterval = 20;
+        /**
+         * 提前刷新 值以{@link CacheEntry}包装存储, 记录回源耗时和逻辑过期时间
+         * 按XFetch算法在过期前于后台刷新热点id, 调用方不会因为过期而阻塞在查库上
+         * 开启或关闭后namespace内的数据格式不同, 切换时需要清空namespace
+         */
+        private boolean refreshAhead;
+        /**
+         * XFetch的beta 大于1更早刷新
+         */
+        private double refreshBeta = 1.0;
+        /**
+         * 后台刷新使用的线程池 为null时使用ForkJoinPool.commonPool()
+         */
+        private Executor refreshExecutor;
+        /**
+         * 每块的id个数 大于0时超过该数量的请求拆分为多块, 每块单独读缓存/查库/回填, 避免超大的HMGET, IN查询和HMSET
+         */
+        private int chunkSize;
+        /**
+         * 并行执行各块的线程池 应为有界线程池, 如redisLunaExecutor.getExecutorService(); 为null时在调用线程依次执行
+         */
+        private Executor chunkExecutor;
     }
 
     public interface TypeRef {
@@ -54,8 +118,17 @@ public class CacheQueryUtils {
         T run();
     }
 
+    /**
+     * 正在回源的id, namespace:id -> 回源结果, 同一JVM内并发请求同一个id时只有一个请求查库
+     */
+    private static final ConcurrentHashMap<String, CompletableFuture<Object>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    private static final TypeReference<CacheEntry<Object>> ENTRY_TYPE = new TypeReference<CacheEntry<Object>>() {
+    };
+
     /**
      * 包装MGET,且解决缓存穿透问题
+     * 缓存未命中的id按id做single-flight: 首个请求负责查库并回填缓存, 并发请求同一id的线程等待该结果
      *
      * @param redisHashUtil 操作key的bean
      * @param req           入参
@@ -65,6 +138,40 @@ public class CacheQueryUtils {
      * @return
      */
     public static <K, T> Map<K, T> batchQuery(RedisHashUtil redisHashUtil, Req<K, T> req, boolean useCache) {
+        return batchQuery(new HashCacheStore(redisHashUtil), null, req, useCache);
+    }
+
+    /**
+     * 包装MGET,且解决缓存穿透问题
+     * 在single-flight的基础上可以开启租约模式({@link Req#leaseTime}), 防止多个节点同时查库:
+     * 按批获取每个id的租约, 获取到租约的id查库回填, 其余id轮询缓存等待持有者回填, 超时后自行查库
+     *
+     * @param redisHashUtil  操作key的bean
+     * @param redisLeaseUtil 租约bean 为null时不使用租约
+     * @param req            入参
+     * @param useCache       是否使用缓存
+     * @param <K>
+     * @param <T>
+     * @return
+     */
+    public static <K, T> Map<K, T> batchQuery(RedisHashUtil redisHashUtil, RedisLeaseUtil redisLeaseUtil, Req<K, T> req, boolean useCache) {
+        return batchQuery(new HashCacheStore(redisHashUtil), redisLeaseUtil, req, useCache);
+    }
+
+    /**
+     * 包装MGET,且解决缓存穿透问题
+     * 存储方式由cacheStore决定, 如{@link HashCacheStore}一个namespace一个hash, {@link KeyCacheStore}每个id单独一个key单独过期,
+     * {@link io.github.lunasaw.util.cache.ShardedHashCacheStore}一个namespace拆分为多个hash
+     *
+     * @param cacheStore     缓存存储
+     * @param redisLeaseUtil 租约bean 为null时不使用租约
+     * @param req            入参
+     * @param useCache       是否使用缓存
+     * @param <K>
+     * @param <T>
+     * @return
+     */
+    public static <K, T> Map<K, T> batchQuery(CacheStore cacheStore, RedisLeaseUtil redisLeaseUtil, Req<K, T> req, boolean useCache) {
 
         Map<K, T> rMap = Maps.newHashMap();
         if (CollectionUtils.isEmpty(req.keys)) {
@@ -73,49 +180,300 @@ public class CacheQueryUtils {
 
         boolean rwCache = (useCache && req.expiredTime > 0);
         //去重
-        HashSet<K> keySet = Sets.newHashSet(req.keys);
-        List<K> noCacheIds = Lists.newArrayList(keySet);
-        /*--------------------- 走缓存 ----------------------*/
-        if (rwCache) {
-            List<T> list = redisHashUtil.multiGet(req.namespace.getNamespace(), keySet, req.typeReference.run());
-            Map<K, T> cacheSettings = list2Map(list, req.keyGenerate);
-
-            if (MapUtils.isNotEmpty(cacheSettings)) {
-                for (Map.Entry<K, T> ktEntry : cacheSettings.entrySet()) {
-                    //这里过滤掉mock数据
-                    if (req.validate.run(ktEntry.getValue())) {
-                        rMap.put(ktEntry.getKey(), ktEntry.getValue());
-                    }
+        List<K> ids = Lists.newArrayList(Sets.newLinkedHashSet(req.keys));
+        if (req.bloomFilter != null) {
+            List<Boolean> contains = req.bloomFilter.mightContainAll(ids);
+            List<K> existIds = Lists.newArrayListWithCapacity(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                if (Boolean.TRUE.equals(contains.get(i))) {
+                    existIds.add(ids.get(i));
                 }
-                noCacheIds.removeAll(cacheSettings.keySet());
             }
+            ids = existIds;
+            if (CollectionUtils.isEmpty(ids)) {
+                return rMap;
+            }
+        }
+        if (req.chunkSize <= 0 || ids.size() <= req.chunkSize) {
+            return query(cacheStore, redisLeaseUtil, req, ids, rwCache);
+        }
+
+        /*--------------------- 分块 ----------------------*/
+        List<List<K>> chunks = Lists.partition(ids, req.chunkSize);
+        rMap = Maps.newHashMapWithExpectedSize(ids.size());
+        if (req.chunkExecutor == null) {
+            for (List<K> chunk : chunks) {
+                rMap.putAll(query(cacheStore, redisLeaseUtil, req, chunk, rwCache));
+            }
+            return rMap;
+        }
+        List<CompletableFuture<Map<K, T>>> futures = Lists.newArrayListWithCapacity(chunks.size());
+        for (List<K> chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(() -> query(cacheStore, redisLeaseUtil, req, chunk, rwCache), req.chunkExecutor));
+        }
+        for (CompletableFuture<Map<K, T>> future : futures) {
+            Map<K, T> chunkMap = join(future);
+            rMap.putAll(chunkMap);
+        }
+        return rMap;
+    }
+
+    /**
+     * 查询一块id 读缓存, 未命中的id查库并回填
+     */
+    private static <K, T> Map<K, T> query(CacheStore cacheStore, RedisLeaseUtil redisLeaseUtil, Req<K, T> req, List<K> ids, boolean rwCache) {
+        Map<K, T> rMap = Maps.newHashMapWithExpectedSize(ids.size());
+        if (!rwCache) {
+            rMap.putAll(list2Map(req.sql.run(ids), req.keyGenerate));
+            return rMap;
+        }
+
+        /*--------------------- 走缓存 ----------------------*/
+        String namespace = req.namespace.getNamespace();
+        List<K> refreshIds = req.refreshAhead ? Lists.newArrayList() : null;
+        List<K> noCacheIds = readCache(cacheStore, namespace, ids, req, rMap, refreshIds);
+        if (CollectionUtils.isNotEmpty(refreshIds)) {
+            refreshAsync(cacheStore, redisLeaseUtil, namespace, refreshIds, req, rMap);
+        }
+        if (CollectionUtils.isEmpty(noCacheIds)) {
+            return rMap;
         }
 
         /*--------------------- db补数据 ---------------------*/
-        if (CollectionUtils.isNotEmpty(noCacheIds)) {
-            List<T> settingList = req.sql.run(noCacheIds);
-            Map<K, T> dbDOMap = list2Map(settingList, req.keyGenerate);
-            if (CollectionUtils.isNotEmpty(settingList)) {
+        Map<K, CompletableFuture<Object>> waiting = new LinkedHashMap<>();
+        Map<K, CompletableFuture<Object>> owned = claim(namespace, noCacheIds, waiting);
+
+        if (MapUtils.isNotEmpty(owned)) {
+            try {
+                Map<K, T> dbDOMap = load(cacheStore, redisLeaseUtil, namespace, Lists.newArrayList(owned.keySet()), req);
                 rMap.putAll(dbDOMap);
+                owned.forEach((id, future) -> future.complete(dbDOMap.get(id)));
+            } catch (Throwable e) {
+                owned.values().forEach(future -> future.completeExceptionally(e));
+                throw e;
+            } finally {
+                owned.forEach((id, future) -> IN_FLIGHT.remove(flightKey(namespace, id), future));
             }
+        }
 
-            if (rwCache) {
-                //缓存数据填充
-                Map<K, T> cacheMap = Maps.newHashMap();
-                for (K key : noCacheIds) {
-                    T t = dbDOMap.get(key);
-                    if (t == null) {
-                        //mock数据
-                        t = req.mock.run();
-                    }
-                    cacheMap.put(key, t);
+        for (Map.Entry<K, CompletableFuture<Object>> entry : waiting.entrySet()) {
+            T t = join(entry.getValue());
+            if (t != null) {
+                rMap.put(entry.getKey(), t);
+            }
+        }
+        return rMap;
+    }
+
+    /**
+     * 登记回源的id, 返回由当前线程负责回源的id
+     *
+     * @param waiting 已由其他线程回源的id 为null时忽略
+     */
+    private static <K> Map<K, CompletableFuture<Object>> claim(String namespace, List<K> ids, Map<K, CompletableFuture<Object>> waiting) {
+        Map<K, CompletableFuture<Object>> owned = new LinkedHashMap<>();
+        for (K id : ids) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            CompletableFuture<Object> existing = IN_FLIGHT.putIfAbsent(flightKey(namespace, id), future);
+            if (existing == null) {
+                owned.put(id, future);
+            } else if (waiting != null) {
+                waiting.put(id, existing);
+            }
+        }
+        return owned;
+    }
+
+    /**
+     * 读缓存, 命中且校验通过的放入rMap, mock数据视为命中但不返回
+     *
+     * @param refreshIds 提前刷新模式下收集需要后台刷新的id 为null时不收集
+     * @return 未命中的id
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, T> List<K> readCache(CacheStore cacheStore, String namespace, List<K> ids, Req<K, T> req, Map<K, T> rMap, List<K> refreshIds) {
+        List<K> noCacheIds = Lists.newArrayList();
+        if (req.refreshAhead) {
+            List<CacheEntry<Object>> entries = cacheStore.multiGet(namespace, ids, ENTRY_TYPE);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < ids.size(); i++) {
+                CacheEntry<Object> entry = entries.get(i);
+                if (entry == null || entry.isExpired(now)) {
+                    noCacheIds.add(ids.get(i));
+                    continue;
+                }
+                T t = (T) entry.getValue();
+                if (t != null && valid(req, t)) {
+                    rMap.put(ids.get(i), t);
                 }
+                if (refreshIds != null && entry.shouldRefresh(now, req.refreshBeta)) {
+                    refreshIds.add(ids.get(i));
+                }
+            }
+            return noCacheIds;
+        }
 
-                redisHashUtil.set(req.namespace.getNamespace(), cacheMap, req.expiredTime);
+        List<?> values = cacheStore.multiGet(namespace, ids, (TypeReference<T>) req.typeReference.run());
+        for (int i = 0; i < ids.size(); i++) {
+            Object value = values.get(i);
+            if (value == null) {
+                noCacheIds.add(ids.get(i));
+            } else if (!(value instanceof NullValue) && valid(req, (T) value)) {
+                //这里过滤掉空值标记和mock数据
+                rMap.put(ids.get(i), (T) value);
             }
         }
+        return noCacheIds;
+    }
 
-        return rMap;
+    private static <K, T> boolean valid(Req<K, T> req, T t) {
+        return req.validate == null || req.validate.run(t);
+    }
+
+    /**
+     * 回源 开启租约模式时只查询获取到租约的id, 其余id等待其他节点回填
+     */
+    private static <K, T> Map<K, T> load(CacheStore cacheStore, RedisLeaseUtil redisLeaseUtil, String namespace, List<K> ids, Req<K, T> req) {
+        if (redisLeaseUtil == null || req.leaseTime <= 0) {
+            return loadAndFill(cacheStore, namespace, ids, req);
+        }
+        String token = UUID.randomUUID().toString();
+        List<K> leased = redisLeaseUtil.acquire(namespace, ids, token, req.leaseTime, TimeUnit.MILLISECONDS);
+        Map<K, T> result = Maps.newHashMapWithExpectedSize(ids.size());
+        if (CollectionUtils.isNotEmpty(leased)) {
+            try {
+                result.putAll(loadAndFill(cacheStore, namespace, leased, req));
+            } finally {
+                redisLeaseUtil.release(namespace, leased, token);
+            }
+        }
+        if (leased.size() == ids.size()) {
+            return result;
+        }
+
+        Set<K> leasedSet = Sets.newHashSet(leased);
+        List<K> waiting = ids.stream().filter(id -> !leasedSet.contains(id)).collect(Collectors.toList());
+        long deadline = System.currentTimeMillis() + req.leaseWaitTime;
+        while (CollectionUtils.isNotEmpty(waiting) && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(Math.max(req.leasePollInterval, 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            waiting = readCache(cacheStore, namespace, waiting, req, result, null);
+        }
+        if (CollectionUtils.isNotEmpty(waiting)) {
+            //持有者未及时回填
+            result.putAll(loadAndFill(cacheStore, namespace, waiting, req));
+        }
+        return result;
+    }
+
+    /**
+     * 后台刷新即将过期的id 已在回源中的id跳过
+     * 开启租约模式时只刷新获取到租约的id, 其余id由持有租约的节点刷新
+     *
+     * @param current 当前缓存中的值 刷新失败或未刷新时交给等待的线程
+     */
+    private static <K, T> void refreshAsync(CacheStore cacheStore, RedisLeaseUtil redisLeaseUtil, String namespace, List<K> ids, Req<K, T> req,
+        Map<K, T> current) {
+        Map<K, CompletableFuture<Object>> owned = claim(namespace, ids, null);
+        if (MapUtils.isEmpty(owned)) {
+            return;
+        }
+        Map<K, T> snapshot = Maps.newHashMapWithExpectedSize(owned.size());
+        owned.keySet().forEach(id -> snapshot.put(id, current.get(id)));
+
+        Runnable task = () -> {
+            Map<K, T> refreshed = Collections.emptyMap();
+            try {
+                refreshed = refresh(cacheStore, redisLeaseUtil, namespace, Lists.newArrayList(owned.keySet()), req);
+            } catch (Throwable e) {
+                log.warn("refreshAsync::namespace = {}, ids = {}", namespace, owned.keySet(), e);
+            } finally {
+                Map<K, T> values = refreshed;
+                owned.forEach((id, future) -> {
+                    future.complete(values.containsKey(id) ? values.get(id) : snapshot.get(id));
+                    IN_FLIGHT.remove(flightKey(namespace, id), future);
+                });
+            }
+        };
+        try {
+            (req.refreshExecutor == null ? ForkJoinPool.commonPool() : req.refreshExecutor).execute(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("refreshAsync rejected::namespace = {}", namespace);
+            owned.forEach((id, future) -> {
+                future.complete(snapshot.get(id));
+                IN_FLIGHT.remove(flightKey(namespace, id), future);
+            });
+        }
+    }
+
+    private static <K, T> Map<K, T> refresh(CacheStore cacheStore, RedisLeaseUtil redisLeaseUtil, String namespace, List<K> ids, Req<K, T> req) {
+        if (redisLeaseUtil == null || req.leaseTime <= 0) {
+            return loadAndFill(cacheStore, namespace, ids, req);
+        }
+        String token = UUID.randomUUID().toString();
+        List<K> leased = redisLeaseUtil.acquire(namespace, ids, token, req.leaseTime, TimeUnit.MILLISECONDS);
+        if (CollectionUtils.isEmpty(leased)) {
+            return Collections.emptyMap();
+        }
+        try {
+            return loadAndFill(cacheStore, namespace, leased, req);
+        } finally {
+            redisLeaseUtil.release(namespace, leased, token);
+        }
+    }
+
+    /**
+     * 查库并回填缓存, 库中不存在的id回填mock数据
+     * 提前刷新模式下以{@link CacheEntry}包装, 记录本次回源耗时和逻辑过期时间
+     */
+    private static <K, T> Map<K, T> loadAndFill(CacheStore cacheStore, String namespace, List<K> noCacheIds, Req<K, T> req) {
+        long start = System.currentTimeMillis();
+        List<T> settingList = req.sql.run(noCacheIds);
+        long now = System.currentTimeMillis();
+        Map<K, T> dbDOMap = list2Map(settingList, req.keyGenerate);
+
+        //缓存数据填充
+        Map<K, Object> cacheMap = Maps.newHashMapWithExpectedSize(noCacheIds.size());
+        for (K key : noCacheIds) {
+            Object t = dbDOMap.get(key);
+            if (t == null) {
+                //mock数据 未设置mock时写入空值标记, 提前刷新模式下CacheEntry本身即为标记
+                t = req.mock != null ? req.mock.run() : (req.refreshAhead ? null : NullValue.INSTANCE);
+            }
+            if (req.refreshAhead) {
+                long expire = req.expiredJitter > 0 ? req.expiredTime + ThreadLocalRandom.current().nextLong(req.expiredJitter + 1L) : req.expiredTime;
+                cacheMap.put(key, new CacheEntry<>(t, now - start, now + TimeUnit.SECONDS.toMillis(expire)));
+            } else {
+                cacheMap.put(key, t);
+            }
+        }
+        if (req.refreshAhead) {
+            //逻辑过期时间已带随机值, 物理过期时间取最大值, 保证不早于逻辑过期
+            cacheStore.multiSet(namespace, cacheMap, req.expiredTime + Math.max(req.expiredJitter, 0), 0);
+        } else {
+            cacheStore.multiSet(namespace, cacheMap, req.expiredTime, req.expiredJitter);
+        }
+        return dbDOMap;
+    }
+
+    private static String flightKey(String namespace, Object id) {
+        return namespace + ":" + id;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T join(CompletableFuture<?> future) {
+        try {
+            return (T) future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 
     public static <K, T> Map<K, T> list2Map(List<T> dbList, KeyGenerate<K, T> keyGenerate) {
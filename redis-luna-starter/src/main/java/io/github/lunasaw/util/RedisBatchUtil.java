@@ -0,0 +1,28 @@
+package io.github.lunasaw.util;
+
+import io.github.lunasaw.util.batch.RedisBatch;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 批量操作入口
+ *
+ * @author luna
+ * 2026/10/17
+ */
+@Component
+public class RedisBatchUtil {
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * 创建一次批量操作, 加入的所有操作在execute时通过一次pipeline发送
+     *
+     * @return
+     */
+    public RedisBatch batch() {
+        return new RedisBatch(redisTemplate);
+    }
+}
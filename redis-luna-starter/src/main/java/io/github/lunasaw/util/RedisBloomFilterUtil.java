@@ -0,0 +1,48 @@
+package io.github.lunasaw.util;
+
+import io.github.lunasaw.util.bloom.RedisBloomFilter;
+import io.github.lunasaw.util.config.RedisLunaProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 创建基于redis bitmap的布隆过滤器
+ *
+ * @author luna
+ * 2026/10/17
+ */
+@Component
+public class RedisBloomFilterUtil {
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private RedisKeyUtil redisKeyUtil;
+
+    @Autowired
+    private RedisLunaProperties redisLunaProperties;
+
+    /**
+     * 使用luna.redis.bloom中的默认容量, 误判率和分片数
+     *
+     * @param name bitmap key前缀
+     * @return
+     */
+    public <K> RedisBloomFilter<K> create(String name) {
+        RedisLunaProperties.Bloom bloom = redisLunaProperties.getBloom();
+        return create(name, bloom.getExpectedInsertions(), bloom.getFpp(), bloom.getShards());
+    }
+
+    /**
+     * @param name               bitmap key前缀
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                误判率
+     * @param shards             分片数
+     * @return
+     */
+    public <K> RedisBloomFilter<K> create(String name, long expectedInsertions, double fpp, int shards) {
+        return new RedisBloomFilter<>(redisTemplate, redisKeyUtil, name, expectedInsertions, fpp, shards, redisLunaProperties.getBatchSize());
+    }
+}
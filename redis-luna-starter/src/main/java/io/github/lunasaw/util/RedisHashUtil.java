@@ -1,13 +1,17 @@
 package io.github.lunasaw.util;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.TypeReference;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import org.checkerframework.checker.nullness.qual.Nullable;
-import org.checkerframework.checker.units.qual.K;
+import io.github.lunasaw.util.cache.CacheInvalidator;
+import io.github.lunasaw.util.cache.HotKeyDetector;
+import io.github.lunasaw.util.config.RedisLunaProperties;
+import io.github.lunasaw.util.script.RedisScripts;
+import io.github.lunasaw.util.serializer.RedisTypedSerializer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
@@ -25,36 +29,95 @@ public class RedisHashUtil {
     @Autowired
     private RedisKeyUtil redisKeyUtil;
 
+    @Autowired
+    private RedisTypedSerializer redisTypedSerializer;
+
+    @Autowired
+    private RedisLunaProperties redisLunaProperties;
+
+    @Autowired(required = false)
+    private CacheInvalidator cacheInvalidator;
+
+    @Autowired(required = false)
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * HashGet 直接反序列化为目标类型
+     *
+     * @param key           键 不能为null
+     * @param item          项 不能为null
+     * @param typeReference 目标类型
+     * @return 值
+     */
     public <K, HK, T> T get(K key, HK item, TypeReference<T> typeReference) {
-        return JSON.parseObject(JSON.toJSONString(get(key, item)), typeReference);
+        if (hotKeyDetector != null) {
+            return redisTypedSerializer.deserialize(multiGetRaw(key, Collections.singletonList(item)).get(0), typeReference);
+        }
+        byte[] rawKey = rawKey(key);
+        byte[] rawHashKey = rawHashKey(item);
+        byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hashCommands().hGet(rawKey, rawHashKey));
+        return redisTypedSerializer.deserialize(value, typeReference);
     }
 
+    /**
+     * HashGet 直接反序列化为目标类型, 不存在的项不返回
+     *
+     * @param key           键 不能为null
+     * @param item          项 不能为null
+     * @param typeReference 目标类型
+     * @return 值
+     */
     public <T, HK> List<T> multiGet(String key, Set<HK> item, TypeReference<T> typeReference) {
-        List<Object> list = multiGet(key, item);
-        ArrayList<@Nullable T> arrayList = Lists.newArrayListWithCapacity(item.size());
-        for (Object e : list) {
-            if (e == null) {
-                continue;
-            }
-            T t = JSON.parseObject(JSON.toJSONString(e), typeReference);
-            arrayList.add(t);
+        return redisTypedSerializer.deserializeEach(multiGetRaw(key, Lists.newArrayList(item)), typeReference);
+    }
+
+    /**
+     * HashGet 直接反序列化为目标类型, 返回值与items按位置一一对应, 不存在的项为null
+     *
+     * @param key           键 不能为null
+     * @param items         项 不能为null
+     * @param typeReference 目标类型
+     * @return 值
+     */
+    public <HK, T> List<T> multiGetInOrder(String key, List<HK> items, TypeReference<T> typeReference) {
+        return multiGetInOrder(key, items, typeReference, false);
+    }
+
+    /**
+     * HashGet 返回值与items按位置一一对应, 不存在的项为null
+     *
+     * @param keepNullValue 为true时空值标记返回{@link org.springframework.cache.support.NullValue}, 用于区分不存在和已缓存的空值
+     */
+    public <HK, T> List<T> multiGetInOrder(String key, List<HK> items, TypeReference<T> typeReference, boolean keepNullValue) {
+        List<byte[]> values = multiGetRaw(key, items);
+        RedisSerializer<T> serializer = redisTypedSerializer.forType(typeReference.getType(), keepNullValue);
+        List<T> result = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            result.add(value == null ? null : serializer.deserialize(value));
         }
-        return arrayList;
+        return result;
     }
 
+    /**
+     * 批量获取hash中的项, 一次HMGET完成, 不存在的项使用默认值
+     *
+     * @param key           键 不能为null
+     * @param item          项 不能为null
+     * @param typeReference 目标类型
+     * @param defaultValue  项不存在时的默认值
+     * @return key+项 -> 值
+     */
     public <K, HK, T> HashMap<K, T> multiGetForOne(K key, Set<HK> item, TypeReference<T> typeReference, T defaultValue) {
-        HashMap<K, T> kvHashMap = Maps.newHashMapWithExpectedSize(item.size());
-        item.forEach(e -> {
-            boolean hasKey = hasKey(key, e);
-            K realKey = RedisKeyUtil.getRealKey(key, e);
-            if (hasKey) {
-                T value = get(key, e, typeReference);
-                kvHashMap.putIfAbsent(realKey, value);
-            } else {
-                kvHashMap.putIfAbsent(realKey, defaultValue);
-            }
-        });
-
+        List<HK> items = Lists.newArrayList(item);
+        List<byte[]> values = multiGetRaw(key, items);
+        RedisSerializer<T> serializer = redisTypedSerializer.forType(typeReference.getType());
+        HashMap<K, T> kvHashMap = Maps.newHashMapWithExpectedSize(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            byte[] value = values.get(i);
+            K realKey = RedisKeyUtil.getRealKey(key, items.get(i));
+            T t = value == null ? null : serializer.deserialize(value);
+            kvHashMap.putIfAbsent(realKey, t == null ? defaultValue : t);
+        }
         return kvHashMap;
     }
 
@@ -66,7 +129,15 @@ public class RedisHashUtil {
      * @return 值
      */
     public <K, HK> List<Object> multiGet(K key, Set<HK> item) {
-        return redisTemplate.opsForHash().multiGet(key.toString(), Lists.newArrayList(item));
+        if (hotKeyDetector == null) {
+            return redisTemplate.opsForHash().multiGet(key.toString(), Lists.newArrayList(item));
+        }
+        RedisSerializer<?> serializer = redisTemplate.getHashValueSerializer();
+        List<Object> result = new ArrayList<>(item.size());
+        for (byte[] value : multiGetRaw(key, Lists.newArrayList(item))) {
+            result.add(value == null ? null : serializer.deserialize(value));
+        }
+        return result;
     }
 
     /**
@@ -77,7 +148,11 @@ public class RedisHashUtil {
      * @return 值
      */
     public <K, HK> Object get(K key, HK item) {
-        return redisTemplate.opsForHash().get(key.toString(), item);
+        if (hotKeyDetector == null) {
+            return redisTemplate.opsForHash().get(key.toString(), item);
+        }
+        byte[] value = multiGetRaw(key, Collections.singletonList(item)).get(0);
+        return value == null ? null : redisTemplate.getHashValueSerializer().deserialize(value);
     }
 
     /**
@@ -99,15 +174,15 @@ public class RedisHashUtil {
      */
     public <K, T> void set(String key, Map<K, T> map) {
         redisTemplate.opsForHash().putAll(key, map);
+        invalidate(key);
     }
 
     public <K, T> boolean set(String key, Map<K, T> map, long time) {
-        set(key, map);
-        return redisKeyUtil.expire(key, time, TimeUnit.SECONDS);
+        return set(key, map, time, TimeUnit.SECONDS);
     }
 
     /**
-     * HashSet 并设置时间
+     * HashSet 并设置时间 写入与设置时间在一个lua脚本内原子完成
      *
      * @param key  键
      * @param map  对应多个键值
@@ -115,8 +190,18 @@ public class RedisHashUtil {
      * @return true成功 false失败
      */
     public <K, T> boolean set(String key, Map<K, T> map, long time, TimeUnit timeUnit) {
-        set(key, map);
-        return redisKeyUtil.expire(key, time, timeUnit);
+        if (map.isEmpty()) {
+            return redisKeyUtil.expire(key, time, timeUnit);
+        }
+        List<byte[]> args = new ArrayList<>(map.size() * 2 + 1);
+        args.add(RedisScripts.ttlArg(time, timeUnit));
+        for (Map.Entry<K, T> entry : map.entrySet()) {
+            args.add(rawHashKey(entry.getKey()));
+            args.add(rawHashValue(entry.getValue()));
+        }
+        boolean success = Long.valueOf(1).equals(redisKeyUtil.execute(RedisScripts.HSET_EXPIRE, Collections.singletonList(key), args));
+        invalidate(key);
+        return success;
     }
 
     /**
@@ -129,6 +214,7 @@ public class RedisHashUtil {
      */
     public void put(String key, String item, Object value) {
         redisTemplate.opsForHash().put(key, item, value);
+        invalidate(key);
     }
 
     /**
@@ -138,11 +224,14 @@ public class RedisHashUtil {
      * @param item  项
      * @param value 值
      * @param time  时间(秒) 注意:如果已存在的hash表有时间,这里将会替换原有的时间
+     *              写入与设置时间在一个lua脚本内原子完成
      * @return true 成功 false失败
      */
     public boolean put(String key, String item, Object value, long time, TimeUnit timeUnit) {
-        put(key, item, value);
-        return redisKeyUtil.expire(key, time, timeUnit);
+        List<byte[]> args = Arrays.asList(RedisScripts.ttlArg(time, timeUnit), rawHashKey(item), rawHashValue(value));
+        boolean success = Long.valueOf(1).equals(redisKeyUtil.execute(RedisScripts.HSET_EXPIRE, Collections.singletonList(key), args));
+        invalidate(key);
+        return success;
     }
 
     /**
@@ -153,6 +242,7 @@ public class RedisHashUtil {
      */
     public void delete(String key, Object... hashKeys) {
         redisTemplate.opsForHash().delete(key, hashKeys);
+        invalidate(key);
     }
 
     /**
@@ -175,7 +265,11 @@ public class RedisHashUtil {
      * @return
      */
     public double increment(String key, String item, double by) {
-        return redisTemplate.opsForHash().increment(key, item, by);
+        double value = redisTemplate.opsForHash().increment(key, item, by);
+        if (hotKeyDetector != null) {
+            hotKeyDetector.invalidate(key);
+        }
+        return value;
     }
 
     /**
@@ -187,7 +281,102 @@ public class RedisHashUtil {
      * @return
      */
     public double decrement(String key, String item, double by) {
-        return redisTemplate.opsForHash().increment(key, item, -by);
+        return increment(key, item, -by);
+    }
+
+    /**
+     * HMGET 返回值与items一一对应, 不存在的项为null
+     * 开启热点探测时热点key的项优先读取本地缓存, 只从redis获取本地没有的项
+     */
+    private <HK> List<byte[]> multiGetRaw(Object key, List<HK> items) {
+        if (hotKeyDetector == null || items.isEmpty() || !hotKeyDetector.record(key.toString())) {
+            return hMGetRaw(key, items);
+        }
+        Map<Object, byte[]> local = hotKeyDetector.getHash(key.toString());
+        List<byte[]> values = new ArrayList<>(items.size());
+        List<HK> missing = new ArrayList<>();
+        List<Integer> missingIndexes = new ArrayList<>();
+        for (HK item : items) {
+            byte[] value = local.get(item);
+            if (value == null) {
+                missing.add(item);
+                missingIndexes.add(values.size());
+            }
+            values.add(value);
+        }
+        if (missing.isEmpty()) {
+            hotKeyDetector.recordHit();
+            return values;
+        }
+        List<byte[]> loaded = hMGetRaw(key, missing);
+        for (int i = 0; i < missing.size(); i++) {
+            byte[] value = loaded.get(i);
+            if (value != null) {
+                local.put(missing.get(i), value);
+                values.set(missingIndexes.get(i), value);
+            }
+        }
+        return values;
     }
 
+    /**
+     * items超过batchSize时拆分为多条HMGET, 通过pipeline一次发送
+     */
+    @SuppressWarnings("unchecked")
+    private <HK> List<byte[]> hMGetRaw(Object key, List<HK> items) {
+        if (items.isEmpty()) {
+            return Collections.emptyList();
+        }
+        byte[] rawKey = rawKey(key);
+        List<byte[][]> chunks = new ArrayList<>();
+        for (List<HK> partition : Lists.partition(items, Math.max(redisLunaProperties.getBatchSize(), 1))) {
+            byte[][] rawHashKeys = new byte[partition.size()][];
+            for (int i = 0; i < partition.size(); i++) {
+                rawHashKeys[i] = rawHashKey(partition.get(i));
+            }
+            chunks.add(rawHashKeys);
+        }
+        if (chunks.size() == 1) {
+            return redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.hashCommands().hMGet(rawKey, chunks.get(0)));
+        }
+
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (byte[][] chunk : chunks) {
+                connection.hashCommands().hMGet(rawKey, chunk);
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+        List<byte[]> values = new ArrayList<>(items.size());
+        for (Object result : results) {
+            values.addAll((List<byte[]>) result);
+        }
+        return values;
+    }
+
+    /**
+     * 开启本地缓存失效广播时 通知其他节点hash已被修改
+     */
+    private void invalidate(String key) {
+        if (hotKeyDetector != null) {
+            hotKeyDetector.invalidate(key);
+        }
+        if (cacheInvalidator != null) {
+            cacheInvalidator.publish(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(Object key) {
+        return ((RedisSerializer<Object>) redisTemplate.getKeySerializer()).serialize(key.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawHashKey(Object hashKey) {
+        return ((RedisSerializer<Object>) redisTemplate.getHashKeySerializer()).serialize(hashKey);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawHashValue(Object value) {
+        return ((RedisSerializer<Object>) redisTemplate.getHashValueSerializer()).serialize(value);
+    }
 }
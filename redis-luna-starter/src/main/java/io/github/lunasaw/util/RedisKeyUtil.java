@@ -1,17 +1,41 @@
 package io.github.lunasaw.util;
 
+import io.github.lunasaw.util.config.RedisLunaProperties;
+import com.google.common.collect.Lists;
+import io.github.lunasaw.util.cache.CacheInvalidator;
+import io.github.lunasaw.util.cache.HotKeyDetector;
+import io.github.lunasaw.util.script.RedisScriptRegistry;
+import io.github.lunasaw.util.support.RedisLunaExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * redisKey设计
@@ -26,14 +50,58 @@ public class RedisKeyUtil {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private RedisLunaProperties redisLunaProperties;
+
+    @Autowired
+    private RedisScriptRegistry redisScriptRegistry;
+
+    @Autowired
+    private RedisLunaExecutor redisLunaExecutor;
+
+    @Autowired(required = false)
+    private CacheInvalidator cacheInvalidator;
+
+    @Autowired(required = false)
+    private HotKeyDetector hotKeyDetector;
+
+    private volatile Boolean cluster;
+
     public Long execute(String script, List<String> keys, Object... args) {
-        // 指定 lua 脚本，并且指定返回值类型
-        DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>(script, Long.class);
+        // 相同的脚本内容复用同一个脚本对象, SHA1只计算一次
+        RedisScript<Long> redisScript = redisScriptRegistry.of(script, Long.class);
         // 参数一：redisScript，参数二：key列表，参数三：arg（可多个）
         Long execute = redisTemplate.execute(redisScript, keys, args);
         return execute;
     }
 
+    /**
+     * 执行已注册的脚本 优先使用EVALSHA
+     *
+     * @param name       脚本名 classpath下lua文件的文件名
+     * @param resultType 返回类型
+     * @param keys       key列表
+     * @param args       参数
+     * @return
+     */
+    public <T> T executeScript(String name, Class<T> resultType, List<String> keys, Object... args) {
+        return redisTemplate.execute(redisScriptRegistry.get(name, resultType), keys, args);
+    }
+
+    /**
+     * 执行脚本 参数为已序列化的字节, 不再经过value序列化
+     *
+     * @param script 脚本
+     * @param keys   key列表
+     * @param args   参数
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(RedisScript<T> script, List<String> keys, List<byte[]> args) {
+        RedisSerializer<T> resultSerializer = (RedisSerializer<T>) redisTemplate.getValueSerializer();
+        return redisTemplate.execute(script, RedisSerializer.byteArray(), resultSerializer, keys, args.toArray());
+    }
+
     /**
      * 移动key到指定DB
      *
@@ -96,21 +164,105 @@ public class RedisKeyUtil {
     }
 
     /**
-     * 清空所有键
+     * 清空所有键 使用SCAN遍历并分批UNLINK, 不阻塞redis
      */
     public void cleanAll() {
-        Set<String> keys = redisTemplate.keys("*");
-        delete(keys);
+        deleteByPattern("*");
     }
 
     /**
-     * 返回模糊匹配的key 不重复
+     * 删除模糊匹配的key 使用SCAN遍历并分批UNLINK
+     *
+     * @param pattern 匹配模式
+     * @return 删除的个数
+     */
+    public long deleteByPattern(String pattern) {
+        long deleted = 0;
+        int batchSize = Math.max(redisLunaProperties.getBatchSize(), 1);
+        try (Stream<String> keys = scan(pattern)) {
+            Iterator<String> iterator = keys.iterator();
+            List<String> batch = new ArrayList<>(batchSize);
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() >= batchSize) {
+                    deleted += delete(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                deleted += delete(batch);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 返回模糊匹配的key 不重复 使用SCAN遍历
      *
      * @param key Set<String>
      * @return
      */
     public Set<String> getKeysWithSet(String key) {
-        return redisTemplate.keys(key);
+        try (Stream<String> keys = scan(key)) {
+            return keys.collect(Collectors.toSet());
+        }
+    }
+
+    /**
+     * 游标方式遍历匹配的key, COUNT使用 luna.redis.scan-count
+     *
+     * @param pattern 匹配模式
+     * @return 惰性的key流 使用完需要关闭
+     */
+    public Stream<String> scan(String pattern) {
+        return scan(pattern, redisLunaProperties.getScanCount());
+    }
+
+    /**
+     * 游标方式遍历匹配的key 集群模式下依次遍历所有主节点
+     * 结果可能重复, 遍历期间修改的key不保证返回
+     *
+     * @param pattern 匹配模式
+     * @param count   每次迭代的COUNT提示值
+     * @return 惰性的key流 使用完需要关闭
+     */
+    public Stream<String> scan(String pattern, long count) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(count).build();
+        if (!isCluster()) {
+            return redisTemplate.scan(options).stream();
+        }
+        RedisSerializer<String> keySerializer = keySerializer();
+        RedisClusterConnection connection = redisTemplate.getRequiredConnectionFactory().getClusterConnection();
+        return StreamSupport.stream(connection.clusterGetNodes().spliterator(), false)
+                .filter(RedisClusterNode::isMaster)
+                .flatMap(node -> connection.scan(node, options).stream())
+                .map(keySerializer::deserialize)
+                .onClose(connection::close);
+    }
+
+    /**
+     * 是否为集群模式
+     *
+     * @return
+     */
+    public boolean isCluster() {
+        Boolean isCluster = cluster;
+        if (isCluster == null) {
+            isCluster = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection instanceof RedisClusterConnection);
+            cluster = isCluster;
+        }
+        return Boolean.TRUE.equals(isCluster);
+    }
+
+    /**
+     * UNLINK 在后台线程释放内存
+     *
+     * @param keys
+     * @return 删除的个数
+     */
+    public long unlink(Collection<String> keys) {
+        Long unlink = redisTemplate.unlink(keys);
+        return unlink == null ? 0 : unlink;
     }
 
     /**
@@ -153,6 +305,12 @@ public class RedisKeyUtil {
      * @return
      */
     public Long countExistingKeys(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return 0L;
+        }
+        if (isCluster()) {
+            return executeBySlot(keys, RedisOperations::countExistingKeys).stream().mapToLong(e -> e == null ? 0 : ((Number) e).longValue()).sum();
+        }
         return redisTemplate.countExistingKeys(keys);
     }
 
@@ -166,12 +324,44 @@ public class RedisKeyUtil {
     }
 
     /**
-     * 删除key
+     * 删除key 按batchSize分批UNLINK, 在后台释放内存
+     * 单机模式下各批次通过pipeline一次发送, 集群模式见{@link #executeBySlot}
      *
      * @param keys 可以传一个值 或多个
+     * @return 删除的个数
      */
     public Long delete(Collection<String> keys) {
-        return redisTemplate.delete(keys);
+        if (keys == null || keys.isEmpty()) {
+            return 0L;
+        }
+        long deleted = unlinkInBatches(keys);
+        if (hotKeyDetector != null) {
+            hotKeyDetector.invalidate(keys);
+        }
+        if (cacheInvalidator != null) {
+            cacheInvalidator.publish(keys);
+        }
+        return deleted;
+    }
+
+    private long unlinkInBatches(Collection<String> keys) {
+        int batchSize = Math.max(redisLunaProperties.getBatchSize(), 1);
+        if (isCluster()) {
+            return executeBySlot(keys, RedisOperations::unlink).stream().mapToLong(e -> e == null ? 0 : ((Number) e).longValue()).sum();
+        }
+
+        List<List<String>> batches = Lists.partition(new ArrayList<>(keys), batchSize);
+        if (batches.size() == 1) {
+            return unlink(batches.get(0));
+        }
+        RedisSerializer<String> keySerializer = keySerializer();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (List<String> batch : batches) {
+                connection.keyCommands().unlink(batch.stream().map(keySerializer::serialize).toArray(byte[][]::new));
+            }
+            return null;
+        });
+        return results.stream().mapToLong(e -> e == null ? 0 : ((Number) e).longValue()).sum();
     }
 
     /**
@@ -180,9 +370,128 @@ public class RedisKeyUtil {
      * @param keys 可以传一个值 或多个
      */
     public void delete(String... keys) {
+        delete(Arrays.asList(keys));
+    }
+
+    /**
+     * 按hash slot对key分组 同一组的key可以在集群模式下用一条命令操作
+     *
+     * @param keys
+     * @return slot -> keys 组内保持原有顺序
+     */
+    public Map<Integer, List<String>> partitionBySlot(Collection<String> keys) {
+        RedisSerializer<String> keySerializer = keySerializer();
+        Map<Integer, List<String>> slots = new LinkedHashMap<>();
         for (String key : keys) {
-            redisTemplate.delete(key);
+            int slot = ClusterSlotHashUtil.calculateSlot(keySerializer.serialize(key));
+            slots.computeIfAbsent(slot, k -> new ArrayList<>()).add(key);
         }
+        return slots;
+    }
+
+    /**
+     * 集群模式下执行多key命令: 按slot分组并按batchSize拆分, 每组执行一次command
+     * 同一节点上的分组通过一个pipeline发送, 各节点之间并行
+     *
+     * @param keys    key集合
+     * @param command 对一组同slot的key执行的命令 在pipeline中执行, 每组只能发送一条命令, 返回值被忽略
+     * @return 每组命令的结果, 顺序与{@link #slotBatches}一致
+     */
+    public List<Object> executeBySlot(Collection<String> keys, BiConsumer<RedisOperations<String, Object>, List<String>> command) {
+        return executeBySlot(slotBatches(keys), command);
+    }
+
+    /**
+     * 集群模式下执行已分组的多key命令, 每组内的key必须属于同一个slot
+     *
+     * @param batches 分组
+     * @param command 对一组key执行的命令 每组只能发送一条命令
+     * @return 每组命令的结果, 顺序与batches一致
+     */
+    public List<Object> executeBySlot(List<List<String>> batches, BiConsumer<RedisOperations<String, Object>, List<String>> command) {
+        return executeBySlot(batches, command, redisTemplate.getValueSerializer());
+    }
+
+    /**
+     * 集群模式下执行已分组的多key命令, 结果使用指定的序列化器反序列化
+     *
+     * @param batches          分组
+     * @param command          对一组key执行的命令 每组只能发送一条命令
+     * @param resultSerializer 结果的序列化器 {@link RedisSerializer#byteArray()}时返回原始字节
+     * @return 每组命令的结果, 顺序与batches一致
+     */
+    public List<Object> executeBySlot(List<List<String>> batches, BiConsumer<RedisOperations<String, Object>, List<String>> command,
+        RedisSerializer<?> resultSerializer) {
+        return executeBySlotIndexed(batches, (operations, index) -> command.accept(operations, batches.get(index)), resultSerializer);
+    }
+
+    /**
+     * 集群模式下执行已分组的多key命令, command接收分组的下标, 便于按下标取每组对应的参数
+     *
+     * @param batches          分组
+     * @param command          对第index组执行的命令 每组只能发送一条命令
+     * @param resultSerializer 结果的序列化器
+     * @return 每组命令的结果, 顺序与batches一致
+     */
+    public List<Object> executeBySlotIndexed(List<List<String>> batches, BiConsumer<RedisOperations<String, Object>, Integer> command,
+        RedisSerializer<?> resultSerializer) {
+        if (batches.isEmpty()) {
+            return Collections.emptyList();
+        }
+        RedisSerializer<String> keySerializer = keySerializer();
+        List<RedisClusterNode> nodes = redisTemplate.execute((RedisCallback<List<RedisClusterNode>>) connection -> {
+            RedisClusterConnection clusterConnection = (RedisClusterConnection) connection;
+            List<RedisClusterNode> result = new ArrayList<>(batches.size());
+            for (List<String> batch : batches) {
+                result.add(clusterConnection.clusterGetNodeForSlot(ClusterSlotHashUtil.calculateSlot(keySerializer.serialize(batch.get(0)))));
+            }
+            return result;
+        });
+        Map<RedisClusterNode, List<Integer>> nodeBatches = new LinkedHashMap<>();
+        for (int i = 0; i < batches.size(); i++) {
+            nodeBatches.computeIfAbsent(nodes.get(i), k -> new ArrayList<>()).add(i);
+        }
+
+        List<List<Integer>> groups = new ArrayList<>(nodeBatches.values());
+        List<List<Object>> groupResults = redisLunaExecutor.map(groups, indexes -> redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                for (Integer index : indexes) {
+                    command.accept((RedisOperations<String, Object>) operations, index);
+                }
+                return null;
+            }
+        }, resultSerializer));
+        Object[] results = new Object[batches.size()];
+        for (int i = 0; i < groups.size(); i++) {
+            List<Integer> indexes = groups.get(i);
+            List<Object> groupResult = groupResults.get(i);
+            for (int j = 0; j < indexes.size(); j++) {
+                results[indexes.get(j)] = groupResult.get(j);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 按slot分组后再按batchSize拆分
+     *
+     * @param keys
+     * @return 每组内的key属于同一个slot
+     */
+    public List<List<String>> slotBatches(Collection<String> keys) {
+        int batchSize = Math.max(redisLunaProperties.getBatchSize(), 1);
+        List<List<String>> batches = new ArrayList<>();
+        for (List<String> slotKeys : partitionBySlot(keys).values()) {
+            batches.addAll(Lists.partition(slotKeys, batchSize));
+        }
+        return batches;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<String> keySerializer() {
+        return (RedisSerializer<String>) redisTemplate.getKeySerializer();
     }
 
     /**
@@ -0,0 +1,83 @@
+package io.github.lunasaw.util;
+
+import io.github.lunasaw.util.script.RedisScripts;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式租约 多个节点同时未命中缓存时只有租约持有者回源
+ * 同一namespace的租约key使用相同的hash tag, 集群模式下落在同一个slot, 可以在一个脚本内批量处理
+ *
+ * @author luna
+ * 2026/10/17
+ */
+@Component
+public class RedisLeaseUtil {
+
+    @Autowired
+    private RedisKeyUtil redisKeyUtil;
+
+    /**
+     * 批量获取租约 一次往返
+     *
+     * @param namespace 命名空间
+     * @param ids       id
+     * @param token     持有者token 释放时校验
+     * @param time      租约时长
+     * @param timeUnit  单位
+     * @return 获取成功的id
+     */
+    public <K> List<K> acquire(String namespace, List<K> ids, String token, long time, TimeUnit timeUnit) {
+        List<K> acquired = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) {
+            return acquired;
+        }
+        List<byte[]> args = new ArrayList<>(2);
+        args.add(RedisScripts.ttlArg(time, timeUnit));
+        args.add(RedisScripts.stringArg(token));
+        List<?> result = redisKeyUtil.execute(RedisScripts.LEASE_ACQUIRE, leaseKeys(namespace, ids), args);
+        for (int i = 0; i < ids.size(); i++) {
+            if (result != null && Long.valueOf(1).equals(result.get(i))) {
+                acquired.add(ids.get(i));
+            }
+        }
+        return acquired;
+    }
+
+    /**
+     * 批量释放租约 已过期或被其他节点重新获取的租约不会被删除
+     *
+     * @param namespace 命名空间
+     * @param ids       id
+     * @param token     获取时使用的token
+     * @return 释放的个数
+     */
+    public <K> long release(String namespace, List<K> ids, String token) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<byte[]> args = new ArrayList<>(1);
+        args.add(RedisScripts.stringArg(token));
+        Long released = redisKeyUtil.execute(RedisScripts.LEASE_RELEASE, leaseKeys(namespace, ids), args);
+        return released == null ? 0 : released;
+    }
+
+    /**
+     * 租约key {namespace}:lease:id
+     */
+    public static String leaseKey(String namespace, Object id) {
+        return "{" + namespace + "}:lease:" + id;
+    }
+
+    private static <K> List<String> leaseKeys(String namespace, List<K> ids) {
+        List<String> keys = new ArrayList<>(ids.size());
+        for (K id : ids) {
+            keys.add(leaseKey(namespace, id));
+        }
+        return keys;
+    }
+}
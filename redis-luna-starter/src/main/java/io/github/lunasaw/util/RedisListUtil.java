@@ -2,13 +2,20 @@ package io.github.lunasaw.util;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.TypeReference;
+import io.github.lunasaw.util.script.RedisScripts;
+import io.github.lunasaw.util.serializer.RedisTypedSerializer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * @author luna@mac
@@ -24,9 +31,32 @@ public class RedisListUtil {
     @Autowired
     private RedisKeyUtil redisKeyUtil;
 
+    @Autowired
+    private RedisTypedSerializer redisTypedSerializer;
+
+    /**
+     * 获取list缓存的内容 集合或数组类型直接按元素类型反序列化
+     *
+     * @param key           键
+     * @param start         开始
+     * @param end           结束 0 到 -1 代表所有值
+     * @param typeReference 集合类型 如List<User>
+     * @return
+     */
     public <T> T getRange(String key, long start, long end, TypeReference<T> typeReference) {
-        List<Object> range = getRange(key, start, end);
-        return JSON.parseObject(JSON.toJSONString(range), typeReference);
+        byte[] rawKey = rawKey(key);
+        List<byte[]> range = redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.listCommands().lRange(rawKey, start, end));
+        if (range == null) {
+            return null;
+        }
+        T value = redisTypedSerializer.deserializeCollection(range, typeReference);
+        if (value != null) {
+            return value;
+        }
+        // 非集合类型沿用原有的转换方式
+        RedisSerializer<Object> serializer = redisTypedSerializer.forType(Object.class);
+        List<Object> objects = range.stream().map(serializer::deserialize).collect(Collectors.toList());
+        return JSON.parseObject(JSON.toJSONString(objects), typeReference);
     }
 
     /**
@@ -48,8 +78,7 @@ public class RedisListUtil {
      * @return
      */
     public <T> T getRange(String key, TypeReference<T> typeReference) {
-        List<Object> range = getRange(key, 0, -1);
-        return JSON.parseObject(JSON.toJSONString(range), typeReference);
+        return getRange(key, 0, -1, typeReference);
     }
 
     /**
@@ -70,8 +99,9 @@ public class RedisListUtil {
      * @return
      */
     public <T> T getIndex(String key, long index, TypeReference<T> typeReference) {
-        Object object = redisTemplate.opsForList().index(key, index);
-        return JSON.parseObject(JSON.toJSONString(object), typeReference);
+        byte[] rawKey = rawKey(key);
+        byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.listCommands().lIndex(rawKey, index));
+        return redisTypedSerializer.deserialize(value, typeReference);
     }
     // ===============================list左侧弹出放到其他key的右侧================================
 
@@ -147,7 +177,7 @@ public class RedisListUtil {
     }
 
     /**
-     * 带时间右侧放入缓存
+     * 带时间右侧放入缓存 写入与设置时间原子完成
      *
      * @param key      键
      * @param value    值
@@ -156,10 +186,7 @@ public class RedisListUtil {
      * @return
      */
     public boolean rightSet(String key, Object value, long time, TimeUnit timeUnit) {
-        if (1 != rightSet(key, value)) {
-            return false;
-        }
-        return redisKeyUtil.expire(key, time, timeUnit);
+        return 1 == pushAndExpire(key, "RPUSH", Collections.singletonList(value), time, timeUnit);
     }
 
     /**
@@ -174,7 +201,7 @@ public class RedisListUtil {
     }
 
     /**
-     * 带时间右侧放入缓存
+     * 带时间右侧放入缓存 写入与设置时间原子完成
      *
      * @param key   键
      * @param value 值
@@ -182,10 +209,7 @@ public class RedisListUtil {
      * @return
      */
     public boolean rightPushAll(String key, List<Object> value, long time, TimeUnit timeUnit) {
-        if (value.size() != rightSetAll(key, value)) {
-            return false;
-        }
-        return redisKeyUtil.expire(key, time, timeUnit);
+        return value.size() == pushAndExpire(key, "RPUSH", value, time, timeUnit);
     }
 
     // ===============================list左侧放入=================================
@@ -202,7 +226,7 @@ public class RedisListUtil {
     }
 
     /**
-     * 带时间左侧放入缓存
+     * 带时间左侧放入缓存 写入与设置时间原子完成
      *
      * @param key      键
      * @param value    值
@@ -211,10 +235,7 @@ public class RedisListUtil {
      * @return
      */
     public boolean leftSet(String key, Object value, long time, TimeUnit timeUnit) {
-        if (1 != leftSet(key, value)) {
-            return false;
-        }
-        return redisKeyUtil.expire(key, time, timeUnit);
+        return 1 == pushAndExpire(key, "LPUSH", Collections.singletonList(value), time, timeUnit);
     }
 
     /**
@@ -229,7 +250,7 @@ public class RedisListUtil {
     }
 
     /**
-     * 带时间右侧放入缓存
+     * 带时间右侧放入缓存 写入与设置时间原子完成
      *
      * @param key   键
      * @param value 值
@@ -237,10 +258,7 @@ public class RedisListUtil {
      * @return
      */
     public boolean leftPushAll(String key, List<Object> value, long time, TimeUnit timeUnit) {
-        if (value.size() != leftSetAll(key, value)) {
-            return false;
-        }
-        return redisKeyUtil.expire(key, time, timeUnit);
+        return value.size() == pushAndExpire(key, "LPUSH", value, time, timeUnit);
     }
 
     /**
@@ -269,4 +287,27 @@ public class RedisListUtil {
         }
         return redisTemplate.opsForList().remove(key, count, value);
     }
+
+    /**
+     * push与设置过期时间在一个lua脚本内原子完成
+     *
+     * @return push后list的长度
+     */
+    @SuppressWarnings("unchecked")
+    private long pushAndExpire(String key, String command, List<Object> values, long time, TimeUnit timeUnit) {
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        List<byte[]> args = new ArrayList<>(values.size() + 2);
+        args.add(RedisScripts.ttlArg(time, timeUnit));
+        args.add(RedisScripts.stringArg(command));
+        for (Object value : values) {
+            args.add(valueSerializer.serialize(value));
+        }
+        Long size = redisKeyUtil.execute(RedisScripts.PUSH_EXPIRE, Collections.singletonList(key), args);
+        return size == null ? 0 : size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String key) {
+        return ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key);
+    }
 }
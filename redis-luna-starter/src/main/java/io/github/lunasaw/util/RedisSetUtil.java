@@ -1,10 +1,15 @@
 package io.github.lunasaw.util;
 
+import io.github.lunasaw.util.script.RedisScripts;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -97,18 +102,23 @@ public class RedisSetUtil {
     }
 
     /**
-     * 将set数据放入缓存
+     * 将set数据放入缓存 写入与设置时间在一个lua脚本内原子完成
      *
      * @param key    键
      * @param time   时间(秒)
      * @param values 值 可以是多个
      * @return 成功个数
      */
+    @SuppressWarnings("unchecked")
     public boolean set(String key, long time, TimeUnit timeUnit, Object... values) {
-        if (values.length != set(key, values)) {
-            return false;
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        List<byte[]> args = new ArrayList<>(values.length + 1);
+        args.add(RedisScripts.ttlArg(time, timeUnit));
+        for (Object value : values) {
+            args.add(valueSerializer.serialize(value));
         }
-        return redisKeyUtil.expire(key, time, timeUnit);
+        Long added = redisKeyUtil.execute(RedisScripts.SADD_EXPIRE, Collections.singletonList(key), args);
+        return added != null && values.length == added;
     }
 
     /**
@@ -129,7 +139,7 @@ public class RedisSetUtil {
      * @param otherKey 不能为null
      */
     public Set<Object> union(String key, String otherKey) {
-        return redisTemplate.opsForSet().union(key, otherKey);
+        return union(key, Collections.singletonList(otherKey));
     }
 
     /**
@@ -143,7 +153,14 @@ public class RedisSetUtil {
      * @param otherKey 不能为null
      */
     public Set<Object> union(String key, Collection<String> otherKey) {
-        return redisTemplate.opsForSet().union(key, otherKey);
+        if (!redisKeyUtil.isCluster()) {
+            return redisTemplate.opsForSet().union(key, otherKey);
+        }
+        Set<Object> result = new HashSet<>();
+        for (Set<Object> members : membersBySlot(key, otherKey)) {
+            result.addAll(members);
+        }
+        return result;
     }
 
     /**
@@ -174,7 +191,7 @@ public class RedisSetUtil {
      * 求指定集合与另一个集合的差集
      */
     public Set<Object> difference(String key, String otherKey) {
-        return redisTemplate.opsForSet().difference(key, otherKey);
+        return difference(key, Collections.singletonList(otherKey));
     }
 
     /**
@@ -185,7 +202,15 @@ public class RedisSetUtil {
      * @return
      */
     public Set<Object> difference(String key, Collection<String> otherKey) {
-        return redisTemplate.opsForSet().difference(key, otherKey);
+        if (!redisKeyUtil.isCluster()) {
+            return redisTemplate.opsForSet().difference(key, otherKey);
+        }
+        List<Set<Object>> members = membersBySlot(key, otherKey);
+        Set<Object> result = new HashSet<>(members.get(0));
+        for (int i = 1; i < members.size() && !result.isEmpty(); i++) {
+            result.removeAll(members.get(i));
+        }
+        return result;
     }
 
     /**
@@ -211,4 +236,26 @@ public class RedisSetUtil {
     public Long differenceAndStore(String key, String otherKey, String destKey) {
         return redisTemplate.opsForSet().differenceAndStore(key, otherKey, destKey);
     }
+
+    /**
+     * 集群模式下key可能分布在不同slot, 按节点并行获取每个集合的成员, 在客户端合并
+     *
+     * @return 与key, otherKey顺序一致的成员集合
+     */
+    @SuppressWarnings("unchecked")
+    private List<Set<Object>> membersBySlot(String key, Collection<String> otherKey) {
+        List<String> keys = new ArrayList<>(otherKey.size() + 1);
+        keys.add(key);
+        keys.addAll(otherKey);
+        List<List<String>> batches = new ArrayList<>(keys.size());
+        for (String k : keys) {
+            batches.add(Collections.singletonList(k));
+        }
+        List<Object> results = redisKeyUtil.executeBySlot(batches, (operations, batch) -> operations.opsForSet().members(batch.get(0)));
+        List<Set<Object>> members = new ArrayList<>(results.size());
+        for (Object result : results) {
+            members.add(result == null ? Collections.emptySet() : (Set<Object>) result);
+        }
+        return members;
+    }
 }
@@ -1,15 +1,30 @@
 package io.github.lunasaw.util;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.TypeReference;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import io.github.lunasaw.util.cache.CacheInvalidator;
+import io.github.lunasaw.util.cache.HotKeyDetector;
+import io.github.lunasaw.util.config.RedisLunaProperties;
+import io.github.lunasaw.util.serializer.RedisTypedSerializer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * @author luna@mac
@@ -21,8 +36,30 @@ public class RedisValueUtil {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private RedisTypedSerializer redisTypedSerializer;
+
+    @Autowired
+    private RedisKeyUtil redisKeyUtil;
+
+    @Autowired
+    private RedisLunaProperties redisLunaProperties;
+
+    @Autowired(required = false)
+    private CacheInvalidator cacheInvalidator;
+
+    @Autowired(required = false)
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * 普通缓存获取 直接反序列化为目标类型 如果key不存在则返回null
+     *
+     * @param key           键
+     * @param typeReference 目标类型
+     * @return 值
+     */
     public <T> T get(String key, TypeReference<T> typeReference) {
-        return JSON.parseObject(JSON.toJSONString(get(key)), typeReference);
+        return redisTypedSerializer.deserialize(getRaw(key), typeReference);
     }
 
     /**
@@ -32,7 +69,30 @@ public class RedisValueUtil {
      * @return 值
      */
     public Object get(String key) {
-        return redisTemplate.opsForValue().get(key);
+        if (hotKeyDetector == null) {
+            return redisTemplate.opsForValue().get(key);
+        }
+        byte[] value = getRaw(key);
+        return value == null ? null : redisTemplate.getValueSerializer().deserialize(value);
+    }
+
+    /**
+     * GET 开启热点探测时热点key优先读取本地缓存
+     */
+    private byte[] getRaw(String key) {
+        boolean hot = hotKeyDetector != null && hotKeyDetector.record(key);
+        if (hot) {
+            byte[] local = hotKeyDetector.getValue(key);
+            if (local != null) {
+                return local;
+            }
+        }
+        byte[] rawKey = rawKey(key);
+        byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+        if (hot && value != null) {
+            hotKeyDetector.putValue(key, value);
+        }
+        return value;
     }
 
     /**
@@ -56,6 +116,64 @@ public class RedisValueUtil {
         return redisTemplate.opsForValue().setBit(key, offset, value);
     }
 
+    /**
+     * 批量获取bit 每batchSize个偏移合并为一条BITFIELD, 通过pipeline一次发送
+     *
+     * @param key
+     * @param offsets 偏移 不超过2^32-1
+     * @return 与offsets一一对应
+     */
+    public List<Boolean> getBits(String key, List<Long> offsets) {
+        List<Boolean> result = new ArrayList<>(offsets.size());
+        for (Object values : bitField(key, offsets, null)) {
+            for (Object bit : (List<?>) values) {
+                result.add(bit != null && ((Number) bit).longValue() == 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量设置bit 每batchSize个偏移合并为一条BITFIELD, 通过pipeline一次发送
+     *
+     * @param key
+     * @param offsets 偏移 不超过2^32-1
+     * @param value
+     */
+    public void setBits(String key, List<Long> offsets, boolean value) {
+        bitField(key, offsets, value ? 1L : 0L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> bitField(String key, List<Long> offsets, Long setValue) {
+        if (offsets.isEmpty()) {
+            return Collections.emptyList();
+        }
+        BitFieldSubCommands.BitFieldType bit = BitFieldSubCommands.BitFieldType.unsigned(1);
+        List<BitFieldSubCommands> commands = new ArrayList<>();
+        for (List<Long> partition : Lists.partition(offsets, Math.max(redisLunaProperties.getBatchSize(), 1))) {
+            BitFieldSubCommands.BitFieldSubCommand[] subCommands = new BitFieldSubCommands.BitFieldSubCommand[partition.size()];
+            for (int i = 0; i < partition.size(); i++) {
+                BitFieldSubCommands.Offset offset = BitFieldSubCommands.Offset.offset(partition.get(i));
+                subCommands[i] = setValue != null ? BitFieldSubCommands.BitFieldSet.create(bit, offset, setValue)
+                    : BitFieldSubCommands.BitFieldGet.create(bit, offset);
+            }
+            commands.add(BitFieldSubCommands.create(subCommands));
+        }
+        if (commands.size() == 1) {
+            return Collections.singletonList(redisTemplate.opsForValue().bitField(key, commands.get(0)));
+        }
+        return redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                for (BitFieldSubCommands command : commands) {
+                    ((RedisOperations<String, Object>) operations).opsForValue().bitField(key, command);
+                }
+                return null;
+            }
+        }, RedisSerializer.byteArray());
+    }
+
     /**
      * 计数
      *
@@ -86,7 +204,9 @@ public class RedisValueUtil {
      * @param key 不能为null
      */
     public Object getAndSet(String key, Object value) {
-        return redisTemplate.opsForValue().getAndSet(key, value);
+        Object old = redisTemplate.opsForValue().getAndSet(key, value);
+        invalidate(key);
+        return old;
     }
 
     /**
@@ -100,6 +220,7 @@ public class RedisValueUtil {
      */
     public void set(String key, Object value) {
         redisTemplate.opsForValue().set(key, value);
+        invalidate(key);
     }
 
     /**
@@ -113,6 +234,7 @@ public class RedisValueUtil {
      */
     public void set(String key, Object value, long offset) {
         redisTemplate.opsForValue().set(key, value, offset);
+        invalidate(key);
     }
 
     /**
@@ -125,6 +247,7 @@ public class RedisValueUtil {
      */
     public void set(String key, Object value, long time, TimeUnit timeUnit) {
         redisTemplate.opsForValue().set(key, value, time, timeUnit);
+        invalidate(key);
     }
 
     /**
@@ -135,7 +258,9 @@ public class RedisValueUtil {
      * @see <a href="http://redis.io/commands/append">Redis Documentation: APPEND</a>
      */
     public Integer append(String key, String value) {
-        return redisTemplate.opsForValue().append(key, value);
+        Integer length = redisTemplate.opsForValue().append(key, value);
+        invalidate(key);
+        return length;
     }
 
     /**
@@ -146,16 +271,33 @@ public class RedisValueUtil {
      * @param value 设置的值
      */
     public Boolean setIfAbsent(String key, Object value) {
-        return redisTemplate.opsForValue().setIfAbsent(key, value);
+        Boolean success = redisTemplate.opsForValue().setIfAbsent(key, value);
+        if (Boolean.TRUE.equals(success)) {
+            invalidate(key);
+        }
+        return success;
     }
 
     /**
      * 把一个map的键值对添加到redis中，key-value 对应着 key value。如果key已经存在就覆盖，
+     * 集群模式下按slot分组写入, 不保证跨slot的原子性
      *
      * @param map 不能为null 为null抛出空指针异常 可以为空集合
      */
     public void multiSet(Map<String, Object> map) {
-        redisTemplate.opsForValue().multiSet(map);
+        if (map.isEmpty() || !redisKeyUtil.isCluster()) {
+            redisTemplate.opsForValue().multiSet(map);
+            invalidate(map.keySet());
+            return;
+        }
+        redisKeyUtil.executeBySlot(map.keySet(), (operations, batch) -> {
+            Map<String, Object> slotMap = Maps.newHashMapWithExpectedSize(batch.size());
+            for (String key : batch) {
+                slotMap.put(key, map.get(key));
+            }
+            operations.opsForValue().multiSet(slotMap);
+        });
+        invalidate(map.keySet());
     }
 
     /**
@@ -165,16 +307,166 @@ public class RedisValueUtil {
      * @param map map不能为空 可以为empty
      */
     public Boolean multiSetIfAbsent(Map<String, Object> map) {
-        return redisTemplate.opsForValue().multiSetIfAbsent(map);
+        Boolean success = redisTemplate.opsForValue().multiSetIfAbsent(map);
+        if (Boolean.TRUE.equals(success)) {
+            invalidate(map.keySet());
+        }
+        return success;
     }
 
     /**
      * 根据提供的key集合按顺序获取对应的value值
+     * 集群模式下按slot分组, 每个节点一个pipeline并行发送, 结果按keys顺序合并
      *
      * @param keys 集合不能为null 可以为empty 集合
      */
+    @SuppressWarnings("unchecked")
     public List<Object> multiGet(Collection<String> keys) {
-        return redisTemplate.opsForValue().multiGet(keys);
+        if (keys.isEmpty() || !redisKeyUtil.isCluster()) {
+            return redisTemplate.opsForValue().multiGet(keys);
+        }
+        List<List<String>> batches = redisKeyUtil.slotBatches(keys);
+        List<Object> results = redisKeyUtil.executeBySlot(batches, (operations, batch) -> operations.opsForValue().multiGet(batch));
+        Map<String, Object> values = Maps.newHashMapWithExpectedSize(keys.size());
+        for (int i = 0; i < batches.size(); i++) {
+            List<String> batch = batches.get(i);
+            List<Object> batchValues = (List<Object>) results.get(i);
+            for (int j = 0; j < batch.size(); j++) {
+                values.put(batch.get(j), batchValues == null ? null : batchValues.get(j));
+            }
+        }
+        List<Object> ordered = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            ordered.add(values.get(key));
+        }
+        return ordered;
+    }
+
+    /**
+     * 根据提供的key集合按顺序获取对应的value值 直接反序列化为目标类型, 不存在的key为null
+     * 按batchSize拆分为多条MGET通过pipeline发送, 集群模式下按slot分组
+     *
+     * @param keys          集合不能为null
+     * @param typeReference 目标类型
+     * @return 与keys一一对应的值
+     */
+    public <T> List<T> multiGet(List<String> keys, TypeReference<T> typeReference) {
+        return multiGet(keys, typeReference, false);
+    }
+
+    /**
+     * 根据提供的key集合按顺序获取value 不存在的key为null
+     *
+     * @param keepNullValue 为true时空值标记返回{@link org.springframework.cache.support.NullValue}, 用于区分不存在和已缓存的空值
+     */
+    public <T> List<T> multiGet(List<String> keys, TypeReference<T> typeReference, boolean keepNullValue) {
+        List<byte[]> values = multiGetRaw(keys);
+        RedisSerializer<T> serializer = redisTypedSerializer.forType(typeReference.getType(), keepNullValue);
+        List<T> result = new ArrayList<>(keys.size());
+        for (byte[] value : values) {
+            result.add(value == null ? null : serializer.deserialize(value));
+        }
+        return result;
+    }
+
+    /**
+     * 根据提供的key集合按顺序获取未反序列化的value 不存在的key为null
+     * 按batchSize拆分为多条MGET通过pipeline发送, 集群模式下按slot分组
+     *
+     * @param keys 集合不能为null
+     * @return 与keys一一对应的值
+     */
+    @SuppressWarnings("unchecked")
+    public List<byte[]> multiGetRaw(List<String> keys) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<byte[]> values;
+        boolean cluster = redisKeyUtil.isCluster();
+        List<List<String>> batches = cluster ? redisKeyUtil.slotBatches(keys)
+            : Lists.partition(keys, Math.max(redisLunaProperties.getBatchSize(), 1));
+        if (!cluster && batches.size() == 1) {
+            byte[][] rawKeys = keys.stream().map(this::rawKey).toArray(byte[][]::new);
+            values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(rawKeys));
+        } else {
+            List<Object> results = cluster
+                ? redisKeyUtil.executeBySlot(batches, (operations, batch) -> operations.opsForValue().multiGet(batch), RedisSerializer.byteArray())
+                : redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    public <K, V> Object execute(RedisOperations<K, V> operations) {
+                        for (List<String> batch : batches) {
+                            ((RedisOperations<String, Object>) operations).opsForValue().multiGet(batch);
+                        }
+                        return null;
+                    }
+                }, RedisSerializer.byteArray());
+            Map<String, byte[]> rawValues = Maps.newHashMapWithExpectedSize(keys.size());
+            for (int i = 0; i < batches.size(); i++) {
+                List<String> batch = batches.get(i);
+                List<byte[]> batchValues = (List<byte[]>) results.get(i);
+                for (int j = 0; j < batch.size(); j++) {
+                    rawValues.put(batch.get(j), batchValues == null ? null : batchValues.get(j));
+                }
+            }
+            values = keys.stream().map(rawValues::get).collect(Collectors.toList());
+        }
+        return values;
+    }
+
+    /**
+     * 批量写入并为每个key单独设置过期时间 通过pipeline发送, 集群模式下每个节点一个pipeline
+     * 每个key的过期时间为 time + [0, jitter] 内的随机值, 避免同一批写入的key同时过期
+     *
+     * @param map      键值
+     * @param time     时间
+     * @param jitter   随机增加的最大时间 0为不增加
+     * @param timeUnit 单位
+     */
+    @SuppressWarnings("unchecked")
+    public void multiSet(Map<String, ?> map, long time, long jitter, TimeUnit timeUnit) {
+        if (map.isEmpty()) {
+            return;
+        }
+        if (redisKeyUtil.isCluster()) {
+            List<List<String>> batches = map.keySet().stream().map(Collections::singletonList).collect(Collectors.toList());
+            redisKeyUtil.executeBySlot(batches, (operations, batch) -> operations.opsForValue().set(batch.get(0), map.get(batch.get(0)), jitter(time, jitter), timeUnit));
+            invalidate(map.keySet());
+            return;
+        }
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                ValueOperations<String, Object> valueOperations = ((RedisOperations<String, Object>) operations).opsForValue();
+                map.forEach((key, value) -> valueOperations.set(key, value, jitter(time, jitter), timeUnit));
+                return null;
+            }
+        });
+        invalidate(map.keySet());
+    }
+
+    /**
+     * 开启本地缓存失效广播时 通知其他节点key已被修改
+     */
+    private void invalidate(String key) {
+        if (hotKeyDetector != null) {
+            hotKeyDetector.invalidate(key);
+        }
+        if (cacheInvalidator != null) {
+            cacheInvalidator.publish(key);
+        }
+    }
+
+    private void invalidate(Collection<String> keys) {
+        if (hotKeyDetector != null) {
+            hotKeyDetector.invalidate(keys);
+        }
+        if (cacheInvalidator != null) {
+            cacheInvalidator.publish(keys);
+        }
+    }
+
+    private static long jitter(long time, long jitter) {
+        return jitter > 0 ? time + ThreadLocalRandom.current().nextLong(jitter + 1) : time;
     }
 
     /**
@@ -185,7 +477,9 @@ public class RedisValueUtil {
      * @return
      */
     public Long increment(String key, long delta) {
-        return redisTemplate.opsForValue().increment(key, delta);
+        Long value = redisTemplate.opsForValue().increment(key, delta);
+        invalidateHotKey(key);
+        return value;
     }
 
     /**
@@ -196,7 +490,9 @@ public class RedisValueUtil {
      * @param delta 增加的值
      */
     public Double increment(String key, double delta) {
-        return redisTemplate.opsForValue().increment(key, delta);
+        Double value = redisTemplate.opsForValue().increment(key, delta);
+        invalidateHotKey(key);
+        return value;
     }
 
     /**
@@ -207,6 +503,20 @@ public class RedisValueUtil {
      * @return
      */
     public Long decrement(String key, long delta) {
-        return redisTemplate.opsForValue().increment(key, -delta);
+        return increment(key, -delta);
+    }
+
+    /**
+     * 计数类写入不广播失效, 只清除本节点的热点值
+     */
+    private void invalidateHotKey(String key) {
+        if (hotKeyDetector != null) {
+            hotKeyDetector.invalidate(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String key) {
+        return ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key);
     }
 }
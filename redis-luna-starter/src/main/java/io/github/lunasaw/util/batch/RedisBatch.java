@@ -0,0 +1,388 @@
+package io.github.lunasaw.util.batch;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 跨数据结构的批量操作, 所有操作在一次executePipelined中发送
+ * <pre>
+ * BatchResult result = redisBatchUtil.batch()
+ *         .value().set("k1", v1).get("k2")
+ *         .hash().put("h1", "item", v2)
+ *         .zset().add("z1", v3, 1.0)
+ *         .execute();
+ * Object k2 = result.get(1);
+ * </pre>
+ * 结果下标与操作加入的顺序一致, 没有返回值的操作(如HMSET)对应null
+ * 非线程安全, 每次批量操作创建新的实例
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class RedisBatch {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final List<Operation> operations = new ArrayList<>();
+
+    private final ValueOps valueOps = new ValueOps();
+
+    private final HashOps hashOps = new HashOps();
+
+    private final ListOps listOps = new ListOps();
+
+    private final SetOps setOps = new SetOps();
+
+    private final ZSetOps zSetOps = new ZSetOps();
+
+    private final KeyOps keyOps = new KeyOps();
+
+    public RedisBatch(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    public ValueOps value() {
+        return valueOps;
+    }
+
+    public HashOps hash() {
+        return hashOps;
+    }
+
+    public ListOps list() {
+        return listOps;
+    }
+
+    public SetOps set() {
+        return setOps;
+    }
+
+    public ZSetOps zset() {
+        return zSetOps;
+    }
+
+    public KeyOps key() {
+        return keyOps;
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * 一次往返执行所有操作
+     *
+     * @return 按操作顺序排列的结果
+     */
+    @SuppressWarnings("unchecked")
+    public BatchResult execute() {
+        if (operations.isEmpty()) {
+            return new BatchResult(Collections.emptyList());
+        }
+        List<Object> pipelined = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                for (Operation operation : RedisBatch.this.operations) {
+                    operation.action.accept((RedisOperations<String, Object>) operations);
+                }
+                return null;
+            }
+        });
+
+        // 状态类命令(HMSET等)在pipeline中不返回结果, 按操作顺序补齐
+        List<Object> results = new ArrayList<>(operations.size());
+        int index = 0;
+        for (Operation operation : operations) {
+            results.add(operation.hasResult && index < pipelined.size() ? pipelined.get(index++) : null);
+        }
+        return new BatchResult(results);
+    }
+
+    private void add(boolean hasResult, Consumer<RedisOperations<String, Object>> action) {
+        operations.add(new Operation(hasResult, action));
+    }
+
+    private static class Operation {
+
+        private final boolean hasResult;
+
+        private final Consumer<RedisOperations<String, Object>> action;
+
+        Operation(boolean hasResult, Consumer<RedisOperations<String, Object>> action) {
+            this.hasResult = hasResult;
+            this.action = action;
+        }
+    }
+
+    /**
+     * 批量结果
+     */
+    public static class BatchResult {
+
+        private final List<Object> results;
+
+        BatchResult(List<Object> results) {
+            this.results = results;
+        }
+
+        /**
+         * 获取第index个操作的结果
+         *
+         * @param index 操作加入的顺序 从0开始
+         * @return
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(int index) {
+            return (T) results.get(index);
+        }
+
+        public <T> T get(int index, Class<T> type) {
+            return type.cast(results.get(index));
+        }
+
+        public List<Object> getAll() {
+            return Collections.unmodifiableList(results);
+        }
+
+        public int size() {
+            return results.size();
+        }
+    }
+
+    /**
+     * 切换数据结构
+     */
+    public abstract class Ops {
+
+        public ValueOps value() {
+            return valueOps;
+        }
+
+        public HashOps hash() {
+            return hashOps;
+        }
+
+        public ListOps list() {
+            return listOps;
+        }
+
+        public SetOps set() {
+            return setOps;
+        }
+
+        public ZSetOps zset() {
+            return zSetOps;
+        }
+
+        public KeyOps key() {
+            return keyOps;
+        }
+
+        public BatchResult execute() {
+            return RedisBatch.this.execute();
+        }
+    }
+
+    public class ValueOps extends Ops {
+
+        public ValueOps get(String key) {
+            add(true, ops -> ops.opsForValue().get(key));
+            return this;
+        }
+
+        public ValueOps multiGet(Collection<String> keys) {
+            add(true, ops -> ops.opsForValue().multiGet(keys));
+            return this;
+        }
+
+        public ValueOps set(String key, Object value) {
+            add(true, ops -> ops.opsForValue().set(key, value));
+            return this;
+        }
+
+        public ValueOps set(String key, Object value, long time, TimeUnit timeUnit) {
+            add(true, ops -> ops.opsForValue().set(key, value, time, timeUnit));
+            return this;
+        }
+
+        public ValueOps setIfAbsent(String key, Object value, long time, TimeUnit timeUnit) {
+            add(true, ops -> ops.opsForValue().setIfAbsent(key, value, time, timeUnit));
+            return this;
+        }
+
+        public ValueOps multiSet(Map<String, Object> map) {
+            add(true, ops -> ops.opsForValue().multiSet(map));
+            return this;
+        }
+
+        public ValueOps increment(String key, long delta) {
+            add(true, ops -> ops.opsForValue().increment(key, delta));
+            return this;
+        }
+    }
+
+    public class HashOps extends Ops {
+
+        public HashOps get(String key, Object item) {
+            add(true, ops -> ops.opsForHash().get(key, item));
+            return this;
+        }
+
+        public HashOps multiGet(String key, Collection<Object> items) {
+            add(true, ops -> ops.opsForHash().multiGet(key, items));
+            return this;
+        }
+
+        public HashOps getAll(String key) {
+            add(true, ops -> ops.opsForHash().entries(key));
+            return this;
+        }
+
+        public HashOps put(String key, Object item, Object value) {
+            add(true, ops -> ops.opsForHash().put(key, item, value));
+            return this;
+        }
+
+        public HashOps putAll(String key, Map<?, ?> map) {
+            add(false, ops -> ops.opsForHash().putAll(key, map));
+            return this;
+        }
+
+        public HashOps delete(String key, Object... items) {
+            add(true, ops -> ops.opsForHash().delete(key, items));
+            return this;
+        }
+
+        public HashOps increment(String key, Object item, long delta) {
+            add(true, ops -> ops.opsForHash().increment(key, item, delta));
+            return this;
+        }
+    }
+
+    public class ListOps extends Ops {
+
+        public ListOps range(String key, long start, long end) {
+            add(true, ops -> ops.opsForList().range(key, start, end));
+            return this;
+        }
+
+        public ListOps rightPush(String key, Object value) {
+            add(true, ops -> ops.opsForList().rightPush(key, value));
+            return this;
+        }
+
+        public ListOps rightPushAll(String key, Collection<Object> values) {
+            add(true, ops -> ops.opsForList().rightPushAll(key, values));
+            return this;
+        }
+
+        public ListOps leftPush(String key, Object value) {
+            add(true, ops -> ops.opsForList().leftPush(key, value));
+            return this;
+        }
+
+        public ListOps leftPop(String key) {
+            add(true, ops -> ops.opsForList().leftPop(key));
+            return this;
+        }
+
+        public ListOps rightPop(String key) {
+            add(true, ops -> ops.opsForList().rightPop(key));
+            return this;
+        }
+
+        public ListOps size(String key) {
+            add(true, ops -> ops.opsForList().size(key));
+            return this;
+        }
+    }
+
+    public class SetOps extends Ops {
+
+        public SetOps add(String key, Object... values) {
+            RedisBatch.this.add(true, ops -> ops.opsForSet().add(key, values));
+            return this;
+        }
+
+        public SetOps remove(String key, Object... values) {
+            RedisBatch.this.add(true, ops -> ops.opsForSet().remove(key, values));
+            return this;
+        }
+
+        public SetOps members(String key) {
+            RedisBatch.this.add(true, ops -> ops.opsForSet().members(key));
+            return this;
+        }
+
+        public SetOps isMember(String key, Object value) {
+            RedisBatch.this.add(true, ops -> ops.opsForSet().isMember(key, value));
+            return this;
+        }
+
+        public SetOps size(String key) {
+            RedisBatch.this.add(true, ops -> ops.opsForSet().size(key));
+            return this;
+        }
+    }
+
+    public class ZSetOps extends Ops {
+
+        public ZSetOps add(String key, Object value, double score) {
+            RedisBatch.this.add(true, ops -> ops.opsForZSet().add(key, value, score));
+            return this;
+        }
+
+        public ZSetOps remove(String key, Object... values) {
+            RedisBatch.this.add(true, ops -> ops.opsForZSet().remove(key, values));
+            return this;
+        }
+
+        public ZSetOps incrementScore(String key, Object value, double delta) {
+            RedisBatch.this.add(true, ops -> ops.opsForZSet().incrementScore(key, value, delta));
+            return this;
+        }
+
+        public ZSetOps score(String key, Object value) {
+            RedisBatch.this.add(true, ops -> ops.opsForZSet().score(key, value));
+            return this;
+        }
+
+        public ZSetOps range(String key, long start, long end) {
+            RedisBatch.this.add(true, ops -> ops.opsForZSet().range(key, start, end));
+            return this;
+        }
+
+        public ZSetOps rank(String key, Object value) {
+            RedisBatch.this.add(true, ops -> ops.opsForZSet().rank(key, value));
+            return this;
+        }
+    }
+
+    public class KeyOps extends Ops {
+
+        public KeyOps expire(String key, long time, TimeUnit timeUnit) {
+            add(true, ops -> ops.expire(key, time, timeUnit));
+            return this;
+        }
+
+        public KeyOps delete(String key) {
+            add(true, ops -> ops.delete(key));
+            return this;
+        }
+
+        public KeyOps hasKey(String key) {
+            add(true, ops -> ops.hasKey(key));
+            return this;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package io.github.lunasaw.util.batch;
+
+import com.alibaba.fastjson.TypeReference;
+import io.github.lunasaw.util.serializer.RedisTypedSerializer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 合并并发的单点读取
+ * 时间窗口内或达到最大数量的读取合并为一次pipeline: 普通key合并为一条MGET, 同一hash的项合并为一条HMGET
+ * 每个调用方拿到各自的Future, 相同的key只读取一次
+ *
+ * @author luna
+ * 2026/10/17
+ */
+@Slf4j
+public class RedisBatchLoader implements DisposableBean {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final RedisTypedSerializer redisTypedSerializer;
+
+    private final long windowNanos;
+
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService executor;
+
+    private final Object lock = new Object();
+
+    private Batch batch = new Batch();
+
+    public RedisBatchLoader(RedisTemplate<String, Object> redisTemplate, RedisTypedSerializer redisTypedSerializer,
+                            long windowNanos, int maxBatchSize, int threads) {
+        this.redisTemplate = redisTemplate;
+        this.redisTypedSerializer = redisTypedSerializer;
+        this.windowNanos = windowNanos;
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        AtomicInteger index = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(Math.max(threads, 1), r -> {
+            Thread thread = new Thread(r, "redis-batch-loader-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 普通缓存获取
+     *
+     * @param key 键
+     * @return 值 key不存在时为null
+     */
+    public CompletableFuture<Object> get(String key) {
+        return enqueue(key, redisTypedSerializer.forType(Object.class));
+    }
+
+    public <T> CompletableFuture<T> get(String key, TypeReference<T> typeReference) {
+        return enqueue(key, redisTypedSerializer.forType(typeReference.getType()));
+    }
+
+    /**
+     * HashGet
+     *
+     * @param key  键
+     * @param item 项
+     * @return 值 项不存在时为null
+     */
+    public CompletableFuture<Object> hashGet(String key, Object item) {
+        return enqueue(key, item, redisTypedSerializer.forType(Object.class));
+    }
+
+    public <T> CompletableFuture<T> hashGet(String key, Object item, TypeReference<T> typeReference) {
+        return enqueue(key, item, redisTypedSerializer.forType(typeReference.getType()));
+    }
+
+    private <T> CompletableFuture<T> enqueue(String key, RedisSerializer<T> serializer) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        synchronized (lock) {
+            batch.values.computeIfAbsent(key, k -> new ArrayList<>()).add(future);
+            afterAdd();
+        }
+        return future.thenApply(serializer::deserialize);
+    }
+
+    private <T> CompletableFuture<T> enqueue(String key, Object item, RedisSerializer<T> serializer) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        synchronized (lock) {
+            batch.hashes.computeIfAbsent(key, k -> new LinkedHashMap<>())
+                    .computeIfAbsent(item, k -> new ArrayList<>()).add(future);
+            afterAdd();
+        }
+        return future.thenApply(serializer::deserialize);
+    }
+
+    /**
+     * 持有lock时调用
+     */
+    private void afterAdd() {
+        Batch current = batch;
+        current.size++;
+        if (current.size >= maxBatchSize) {
+            if (current.scheduled != null) {
+                current.scheduled.cancel(false);
+            }
+            batch = new Batch();
+            executor.execute(() -> flush(current));
+        } else if (current.scheduled == null) {
+            current.scheduled = executor.schedule(() -> {
+                synchronized (lock) {
+                    if (batch != current) {
+                        return;
+                    }
+                    batch = new Batch();
+                }
+                flush(current);
+            }, windowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void flush(Batch current) {
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        RedisSerializer<Object> hashKeySerializer = (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+        List<String> keys = new ArrayList<>(current.values.keySet());
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                if (!keys.isEmpty()) {
+                    byte[][] rawKeys = new byte[keys.size()][];
+                    for (int i = 0; i < keys.size(); i++) {
+                        rawKeys[i] = keySerializer.serialize(keys.get(i));
+                    }
+                    connection.stringCommands().mGet(rawKeys);
+                }
+                for (Map.Entry<String, Map<Object, List<CompletableFuture<byte[]>>>> entry : current.hashes.entrySet()) {
+                    byte[][] rawHashKeys = entry.getValue().keySet().stream().map(hashKeySerializer::serialize).toArray(byte[][]::new);
+                    connection.hashCommands().hMGet(keySerializer.serialize(entry.getKey()), rawHashKeys);
+                }
+                return null;
+            }, RedisSerializer.byteArray());
+
+            int index = 0;
+            if (!keys.isEmpty()) {
+                complete(new ArrayList<>(current.values.values()), (List<byte[]>) results.get(index++));
+            }
+            for (Map<Object, List<CompletableFuture<byte[]>>> items : current.hashes.values()) {
+                complete(new ArrayList<>(items.values()), (List<byte[]>) results.get(index++));
+            }
+        } catch (Exception e) {
+            log.error("flush::keys = {}, hashes = {}", keys, current.hashes.keySet(), e);
+            current.values.values().forEach(futures -> futures.forEach(f -> f.completeExceptionally(e)));
+            current.hashes.values().forEach(items -> items.values().forEach(futures -> futures.forEach(f -> f.completeExceptionally(e))));
+        }
+    }
+
+    private static void complete(List<List<CompletableFuture<byte[]>>> futures, List<byte[]> values) {
+        for (int i = 0; i < futures.size(); i++) {
+            byte[] value = values.get(i);
+            futures.get(i).forEach(f -> f.complete(value));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private static class Batch {
+
+        private final Map<String, List<CompletableFuture<byte[]>>> values = new LinkedHashMap<>();
+
+        private final Map<String, Map<Object, List<CompletableFuture<byte[]>>>> hashes = new LinkedHashMap<>();
+
+        private int size;
+
+        private ScheduledFuture<?> scheduled;
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.lunasaw.util.bloom;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * id的布隆过滤器 mightContain为false的id一定不存在, 可以在查缓存和查库之前过滤掉
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public interface IdBloomFilter<K> {
+
+    /**
+     * 是否可能存在
+     *
+     * @param id
+     * @return false 一定不存在
+     */
+    boolean mightContain(K id);
+
+    /**
+     * 批量判断
+     *
+     * @param ids
+     * @return 与ids一一对应
+     */
+    default List<Boolean> mightContainAll(List<K> ids) {
+        List<Boolean> result = new ArrayList<>(ids.size());
+        for (K id : ids) {
+            result.add(mightContain(id));
+        }
+        return result;
+    }
+
+    /**
+     * 添加id
+     *
+     * @param id
+     */
+    void put(K id);
+
+    /**
+     * 批量添加id
+     *
+     * @param ids
+     */
+    default void putAll(Collection<K> ids) {
+        for (K id : ids) {
+            put(id);
+        }
+    }
+}
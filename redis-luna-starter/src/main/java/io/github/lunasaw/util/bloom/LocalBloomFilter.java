@@ -0,0 +1,36 @@
+package io.github.lunasaw.util.bloom;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基于guava的本地布隆过滤器 id按toString()计算
+ * 每个JVM各自维护, 适合id集合可以在启动时加载的场景
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class LocalBloomFilter<K> implements IdBloomFilter<K> {
+
+    private final BloomFilter<CharSequence> bloomFilter;
+
+    /**
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                误判率
+     */
+    public LocalBloomFilter(long expectedInsertions, double fpp) {
+        this.bloomFilter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedInsertions, fpp);
+    }
+
+    @Override
+    public boolean mightContain(K id) {
+        return bloomFilter.mightContain(id.toString());
+    }
+
+    @Override
+    public void put(K id) {
+        bloomFilter.put(id.toString());
+    }
+}
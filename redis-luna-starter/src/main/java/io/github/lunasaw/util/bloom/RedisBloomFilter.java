@@ -0,0 +1,213 @@
+package io.github.lunasaw.util.bloom;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+import io.github.lunasaw.util.RedisKeyUtil;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.BitFieldSubCommands.BitFieldGet;
+import org.springframework.data.redis.connection.BitFieldSubCommands.BitFieldSet;
+import org.springframework.data.redis.connection.BitFieldSubCommands.BitFieldSubCommand;
+import org.springframework.data.redis.connection.BitFieldSubCommands.BitFieldType;
+import org.springframework.data.redis.connection.BitFieldSubCommands.Offset;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于redis bitmap的布隆过滤器 多个JVM共享
+ * 在本地计算k个bit的偏移, 每个分片的一批元素合并为一条BITFIELD, 所有分片通过pipeline一次发送
+ * 元素按hash分配到分片 name:shard, 集群模式下各分片分散到不同节点
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class RedisBloomFilter<K> implements IdBloomFilter<K> {
+
+    /**
+     * BITFIELD的偏移上限 单个key最大512MB
+     */
+    private static final long MAX_BITS_PER_SHARD = 1L << 32;
+
+    private static final BitFieldType BIT = BitFieldType.unsigned(1);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final RedisKeyUtil redisKeyUtil;
+
+    private final String name;
+
+    private final int shards;
+
+    private final long bitsPerShard;
+
+    private final int hashFunctions;
+
+    private final int batchSize;
+
+    /**
+     * @param name               bitmap key前缀
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                误判率
+     * @param shards             分片数
+     * @param batchSize          每条BITFIELD包含的元素个数
+     */
+    public RedisBloomFilter(RedisTemplate<String, Object> redisTemplate, RedisKeyUtil redisKeyUtil, String name, long expectedInsertions, double fpp,
+        int shards, int batchSize) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1 || shards <= 0) {
+            throw new IllegalArgumentException("expectedInsertions and shards must be positive, fpp must be in (0, 1)");
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.redisTemplate = redisTemplate;
+        this.redisKeyUtil = redisKeyUtil;
+        this.name = name;
+        this.shards = shards;
+        this.bitsPerShard = Math.max((bits + shards - 1) / shards, 64);
+        if (bitsPerShard > MAX_BITS_PER_SHARD) {
+            throw new IllegalArgumentException("too many bits per shard: " + bitsPerShard + ", increase shards");
+        }
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    @Override
+    public boolean mightContain(K id) {
+        return mightContainAll(Collections.singletonList(id)).get(0);
+    }
+
+    @Override
+    public List<Boolean> mightContainAll(List<K> ids) {
+        Boolean[] result = new Boolean[ids.size()];
+        if (ids.isEmpty()) {
+            return Lists.newArrayList(result);
+        }
+        List<List<Integer>> chunks = new ArrayList<>();
+        List<Object> bits = execute(ids, false, chunks);
+        for (int i = 0; i < chunks.size(); i++) {
+            List<Integer> chunk = chunks.get(i);
+            List<?> values = (List<?>) bits.get(i);
+            for (int j = 0; j < chunk.size(); j++) {
+                boolean contains = values != null;
+                for (int h = 0; h < hashFunctions && contains; h++) {
+                    Object bit = values.get(j * hashFunctions + h);
+                    contains = bit != null && ((Number) bit).longValue() == 1;
+                }
+                result[chunk.get(j)] = contains;
+            }
+        }
+        return Lists.newArrayList(result);
+    }
+
+    @Override
+    public void put(K id) {
+        putAll(Collections.singletonList(id));
+    }
+
+    @Override
+    public void putAll(Collection<K> ids) {
+        if (!ids.isEmpty()) {
+            execute(new ArrayList<>(ids), true, new ArrayList<>());
+        }
+    }
+
+    /**
+     * 删除所有分片
+     */
+    public void clear() {
+        List<String> keys = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            keys.add(shardKey(i));
+        }
+        redisKeyUtil.delete(keys);
+    }
+
+    /**
+     * 按分片和batchSize拆分, 每块一条BITFIELD
+     *
+     * @param chunks 输出 每块包含的元素下标
+     * @return 每块BITFIELD的结果
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> execute(List<K> ids, boolean set, List<List<Integer>> chunks) {
+        Map<Integer, List<Integer>> shardIndexes = new LinkedHashMap<>();
+        List<long[]> offsets = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            HashCode hash = Hashing.murmur3_128().hashString(ids.get(i).toString(), StandardCharsets.UTF_8);
+            byte[] bytes = hash.asBytes();
+            long hash1 = Longs.fromBytes(bytes[7], bytes[6], bytes[5], bytes[4], bytes[3], bytes[2], bytes[1], bytes[0]);
+            long hash2 = Longs.fromBytes(bytes[15], bytes[14], bytes[13], bytes[12], bytes[11], bytes[10], bytes[9], bytes[8]);
+            shardIndexes.computeIfAbsent((int) Math.floorMod(hash2 >>> 1, (long) shards), k -> new ArrayList<>()).add(i);
+            offsets.add(offsets(hash1, hash2));
+        }
+
+        List<List<String>> batches = new ArrayList<>();
+        List<BitFieldSubCommands> commands = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> entry : shardIndexes.entrySet()) {
+            List<String> key = Collections.singletonList(shardKey(entry.getKey()));
+            for (List<Integer> chunk : Lists.partition(entry.getValue(), batchSize)) {
+                BitFieldSubCommand[] subCommands = new BitFieldSubCommand[chunk.size() * hashFunctions];
+                int n = 0;
+                for (Integer index : chunk) {
+                    for (long offset : offsets.get(index)) {
+                        subCommands[n++] = set ? BitFieldSet.create(BIT, Offset.offset(offset), 1) : BitFieldGet.create(BIT, Offset.offset(offset));
+                    }
+                }
+                chunks.add(chunk);
+                batches.add(key);
+                commands.add(BitFieldSubCommands.create(subCommands));
+            }
+        }
+
+        if (redisKeyUtil.isCluster()) {
+            return redisKeyUtil.executeBySlotIndexed(batches,
+                (operations, index) -> operations.opsForValue().bitField(batches.get(index).get(0), commands.get(index)), RedisSerializer.byteArray());
+        }
+        if (batches.size() == 1) {
+            return Collections.singletonList(redisTemplate.opsForValue().bitField(batches.get(0).get(0), commands.get(0)));
+        }
+        return redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <KK, V> Object execute(RedisOperations<KK, V> operations) {
+                for (int i = 0; i < batches.size(); i++) {
+                    ((RedisOperations<String, Object>) operations).opsForValue().bitField(batches.get(i).get(0), commands.get(i));
+                }
+                return null;
+            }
+        }, RedisSerializer.byteArray());
+    }
+
+    /**
+     * 双重hash得到k个偏移 与guava BloomFilter的做法相同
+     */
+    private long[] offsets(long hash1, long hash2) {
+        long[] result = new long[hashFunctions];
+        long combinedHash = hash1;
+        for (int i = 0; i < hashFunctions; i++) {
+            result[i] = (combinedHash & Long.MAX_VALUE) % bitsPerShard;
+            combinedHash += hash2;
+        }
+        return result;
+    }
+
+    private String shardKey(int shard) {
+        return name + ":" + shard;
+    }
+
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    public long getBitsPerShard() {
+        return bitsPerShard;
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.lunasaw.util.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 缓存值的包装 记录回源耗时和逻辑过期时间, 用于提前刷新(XFetch)
+ *
+ * @author luna
+ * 2026/10/17
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheEntry<T> {
+
+    /**
+     * 缓存的值
+     */
+    private T value;
+
+    /**
+     * 回源耗时(毫秒)
+     */
+    private long delta;
+
+    /**
+     * 逻辑过期时间戳(毫秒)
+     */
+    private long expiry;
+
+    public boolean isExpired(long now) {
+        return now >= expiry;
+    }
+
+    /**
+     * XFetch: now - delta * beta * ln(rand) >= expiry 时提前刷新
+     * 回源越慢、越接近过期, 刷新的概率越大
+     *
+     * @param now  当前时间戳(毫秒)
+     * @param beta 大于1更早刷新, 小于1更晚刷新
+     * @return 是否需要刷新
+     */
+    public boolean shouldRefresh(long now, double beta) {
+        double random = ThreadLocalRandom.current().nextDouble();
+        return now - delta * beta * Math.log(random) >= expiry;
+    }
+}
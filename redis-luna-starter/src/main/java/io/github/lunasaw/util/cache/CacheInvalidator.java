@@ -0,0 +1,169 @@
+package io.github.lunasaw.util.cache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.github.lunasaw.util.serializer.RedisTypedSerializer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 本地缓存失效广播
+ * 写redis的key先在本节点同步失效, 再放入队列, 每个时间窗口合并为一条消息发布到频道, 其他节点收到后使本地缓存中的这些key失效
+ * 本节点发出的消息在发布时已经处理过, 收到后忽略
+ *
+ * @author luna
+ * 2026/10/17
+ */
+@Slf4j
+public class CacheInvalidator implements MessageListener, DisposableBean {
+
+    private final String source = UUID.randomUUID().toString();
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final RedisSerializer<InvalidationMessage> messageSerializer;
+
+    private final String channel;
+
+    private final long windowMillis;
+
+    private final int maxBatchSize;
+
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final List<Consumer<Collection<String>>> listeners = new CopyOnWriteArrayList<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("redis-luna-invalidator-%d").setDaemon(true).build());
+
+    public CacheInvalidator(RedisTemplate<String, Object> redisTemplate, RedisTypedSerializer redisTypedSerializer, String channel,
+        long windowMillis, int maxBatchSize) {
+        this.redisTemplate = redisTemplate;
+        this.messageSerializer = redisTypedSerializer.forType(InvalidationMessage.class);
+        this.channel = channel;
+        this.windowMillis = Math.max(windowMillis, 0);
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+    }
+
+    /**
+     * 注册收到失效消息时的处理
+     *
+     * @param listener 失效的key
+     */
+    public void addListener(Consumer<Collection<String>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * key已被修改 先使本节点的本地缓存失效, 再在下一个时间窗口合并广播
+     *
+     * @param keys redis key
+     */
+    public void publish(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        notifyListeners(keys);
+        pending.addAll(keys);
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void publish(String key) {
+        publish(Collections.singletonList(key));
+    }
+
+    private void flush() {
+        scheduled.set(false);
+        List<String> keys = new ArrayList<>();
+        String key;
+        while ((key = pending.poll()) != null) {
+            keys.add(key);
+            if (keys.size() >= maxBatchSize) {
+                send(keys);
+                keys = new ArrayList<>();
+            }
+        }
+        if (!keys.isEmpty()) {
+            send(keys);
+        }
+    }
+
+    private void send(List<String> keys) {
+        try {
+            byte[] body = messageSerializer.serialize(new InvalidationMessage(source, keys));
+            byte[] rawChannel = RedisSerializer.string().serialize(channel);
+            redisTemplate.execute(connection -> connection.publish(rawChannel, body), true);
+        } catch (Exception e) {
+            log.warn("send::channel = {}, keys = {}", channel, keys.size(), e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        InvalidationMessage invalidation;
+        try {
+            invalidation = messageSerializer.deserialize(message.getBody());
+        } catch (Exception e) {
+            log.warn("onMessage::channel = {}", channel, e);
+            return;
+        }
+        // 本节点的消息在publish时已经处理
+        if (invalidation == null || source.equals(invalidation.getSource()) || invalidation.getKeys() == null) {
+            return;
+        }
+        notifyListeners(invalidation.getKeys());
+    }
+
+    private void notifyListeners(Collection<String> keys) {
+        for (Consumer<Collection<String>> listener : listeners) {
+            try {
+                listener.accept(keys);
+            } catch (Exception e) {
+                log.warn("notifyListeners::keys = {}", keys.size(), e);
+            }
+        }
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void destroy() {
+        flush();
+        scheduler.shutdown();
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class InvalidationMessage {
+
+        private String source;
+
+        private List<String> keys;
+    }
+}
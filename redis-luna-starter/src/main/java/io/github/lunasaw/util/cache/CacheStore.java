@@ -0,0 +1,35 @@
+package io.github.lunasaw.util.cache;
+
+import com.alibaba.fastjson.TypeReference;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CacheQueryUtils使用的缓存存储方式
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public interface CacheStore {
+
+    /**
+     * 批量读取
+     *
+     * @param namespace     命名空间
+     * @param ids           id
+     * @param typeReference 目标类型
+     * @return 与ids一一对应的值, 不存在的为null, 缓存的空值标记为{@link org.springframework.cache.support.NullValue}
+     */
+    <K, T> List<T> multiGet(String namespace, List<K> ids, TypeReference<T> typeReference);
+
+    /**
+     * 批量写入
+     *
+     * @param namespace 命名空间
+     * @param values    id -> 值
+     * @param time      过期时间(秒)
+     * @param jitter    过期时间随机增加的最大秒数 0为不增加
+     */
+    <K> void multiSet(String namespace, Map<K, ?> values, long time, long jitter);
+}
@@ -0,0 +1,35 @@
+package io.github.lunasaw.util.cache;
+
+import com.alibaba.fastjson.TypeReference;
+import io.github.lunasaw.util.RedisHashUtil;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 一个namespace一个hash, id为field
+ * 过期时间作用于整个hash, 每次写入都会重置
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class HashCacheStore implements CacheStore {
+
+    private final RedisHashUtil redisHashUtil;
+
+    public HashCacheStore(RedisHashUtil redisHashUtil) {
+        this.redisHashUtil = redisHashUtil;
+    }
+
+    @Override
+    public <K, T> List<T> multiGet(String namespace, List<K> ids, TypeReference<T> typeReference) {
+        return redisHashUtil.multiGetInOrder(namespace, ids, typeReference, true);
+    }
+
+    @Override
+    public <K> void multiSet(String namespace, Map<K, ?> values, long time, long jitter) {
+        long expire = jitter > 0 ? time + ThreadLocalRandom.current().nextLong(jitter + 1) : time;
+        redisHashUtil.set(namespace, values, expire);
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.lunasaw.util.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热点key探测
+ * 每次读取在count-min sketch中计数, 估计值达到阈值的key进入热点集合(最多topK个), 热点key的值在本地短暂缓存
+ * 每个时间窗口所有计数减半, 不再达到阈值的key移出热点集合并清除本地缓存
+ * 本地缓存保存redis返回的原始字节, 读取时按调用方的类型反序列化
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class HotKeyDetector implements InitializingBean, DisposableBean {
+
+    private final AtomicLongArray counters;
+
+    private final int width;
+
+    private final int depth;
+
+    private final long threshold;
+
+    private final int topK;
+
+    private final ConcurrentMap<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * value key -> byte[], hash key -> ConcurrentMap<项, byte[]>
+     */
+    private final Cache<String, Object> local;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder promotions = new LongAdder();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("redis-luna-hot-key-%d").setDaemon(true).build());
+
+    @Autowired(required = false)
+    private CacheInvalidator cacheInvalidator;
+
+    public HotKeyDetector(long threshold, long windowMillis, int topK, long localTtlMillis, int width, int depth) {
+        this.threshold = Math.max(threshold, 1);
+        this.topK = Math.max(topK, 1);
+        this.width = Math.max(width, 64);
+        this.depth = Math.max(depth, 1);
+        this.counters = new AtomicLongArray(this.width * this.depth);
+        this.local = Caffeine.newBuilder().maximumSize(this.topK).expireAfterWrite(Math.max(localTtlMillis, 1), TimeUnit.MILLISECONDS).build();
+        long window = Math.max(windowMillis, 1);
+        scheduler.scheduleAtFixedRate(this::decay, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (cacheInvalidator != null) {
+            // 其他节点修改了key, 本地缓存的热点值失效
+            cacheInvalidator.addListener(this::invalidate);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * 记录一次读取
+     *
+     * @param key redis key
+     * @return 是否为热点key
+     */
+    public boolean record(String key) {
+        int h1 = key.hashCode();
+        int h2 = Integer.rotateLeft(h1 * 0x9E3779B9, 16) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            int index = i * width + ((h1 + i * h2) & Integer.MAX_VALUE) % width;
+            estimate = Math.min(estimate, counters.incrementAndGet(index));
+        }
+        if (estimate < threshold) {
+            return false;
+        }
+        if (hotKeys.replace(key, estimate) == null) {
+            promote(key, estimate);
+        }
+        return true;
+    }
+
+    /**
+     * 热点集合已满时替换计数最小的key
+     */
+    private void promote(String key, long estimate) {
+        if (hotKeys.size() >= topK) {
+            Map.Entry<String, Long> min = null;
+            for (Map.Entry<String, Long> entry : hotKeys.entrySet()) {
+                if (min == null || entry.getValue() < min.getValue()) {
+                    min = entry;
+                }
+            }
+            if (min == null || min.getValue() >= estimate || !hotKeys.remove(min.getKey(), min.getValue())) {
+                return;
+            }
+            local.invalidate(min.getKey());
+        }
+        if (hotKeys.putIfAbsent(key, estimate) == null) {
+            promotions.increment();
+        }
+    }
+
+    private void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            long value = counters.get(i);
+            if (value != 0) {
+                counters.set(i, value >> 1);
+            }
+        }
+        hotKeys.replaceAll((key, count) -> count >> 1);
+        hotKeys.entrySet().removeIf(entry -> {
+            if (entry.getValue() >= threshold) {
+                return false;
+            }
+            local.invalidate(entry.getKey());
+            return true;
+        });
+    }
+
+    /**
+     * 热点value key的本地值
+     *
+     * @return 不存在时为null
+     */
+    public byte[] getValue(String key) {
+        Object value = local.getIfPresent(key);
+        if (value instanceof byte[]) {
+            hits.increment();
+            return (byte[]) value;
+        }
+        return null;
+    }
+
+    public void putValue(String key, byte[] value) {
+        if (hotKeys.containsKey(key)) {
+            local.put(key, value);
+        }
+    }
+
+    /**
+     * 热点hash key的本地项 项 -> 原始值, 不存在的项不缓存
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentMap<Object, byte[]> getHash(String key) {
+        Object value = local.get(key, k -> new ConcurrentHashMap<Object, byte[]>());
+        return value instanceof ConcurrentMap ? (ConcurrentMap<Object, byte[]>) value : new ConcurrentHashMap<>();
+    }
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void invalidate(String key) {
+        local.invalidate(key);
+    }
+
+    public void invalidate(Collection<String> keys) {
+        local.invalidateAll(keys);
+    }
+
+    /**
+     * 当前热点key 按计数从大到小
+     *
+     * @return key -> 估计的访问次数(按窗口衰减)
+     */
+    public Map<String, Long> getHotKeys() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        hotKeys.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+        return result;
+    }
+
+    public int getHotKeyCount() {
+        return hotKeys.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getPromotions() {
+        return promotions.sum();
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.lunasaw.util.cache;
+
+import com.alibaba.fastjson.TypeReference;
+import com.google.common.collect.Maps;
+import io.github.lunasaw.util.RedisValueUtil;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 每个id一个key namespace:id, 每个id单独过期
+ * 读写通过pipeline批量发送, 集群模式下按slot分组
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class KeyCacheStore implements CacheStore {
+
+    private final RedisValueUtil redisValueUtil;
+
+    public KeyCacheStore(RedisValueUtil redisValueUtil) {
+        this.redisValueUtil = redisValueUtil;
+    }
+
+    @Override
+    public <K, T> List<T> multiGet(String namespace, List<K> ids, TypeReference<T> typeReference) {
+        List<String> keys = ids.stream().map(id -> key(namespace, id)).collect(Collectors.toList());
+        return redisValueUtil.multiGet(keys, typeReference, true);
+    }
+
+    @Override
+    public <K> void multiSet(String namespace, Map<K, ?> values, long time, long jitter) {
+        Map<String, Object> map = Maps.newHashMapWithExpectedSize(values.size());
+        values.forEach((id, value) -> map.put(key(namespace, id), value));
+        redisValueUtil.multiSet(map, time, jitter, TimeUnit.SECONDS);
+    }
+
+    public static String key(String namespace, Object id) {
+        return namespace + ":" + id;
+    }
+}
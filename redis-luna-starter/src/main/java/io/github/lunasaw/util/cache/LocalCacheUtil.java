@@ -1,45 +1,340 @@
 package io.github.lunasaw.util.cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+
+import com.alibaba.fastjson.TypeReference;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.github.lunasaw.util.RedisValueUtil;
-import lombok.Data;
-import lombok.SneakyThrows;
+import io.github.lunasaw.util.config.RedisLunaProperties;
+import io.github.lunasaw.util.serializer.RedisTypedSerializer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
+ * 本地缓存(L1) + redis(L2) 两级缓存
+ * 每个namespace一个caffeine缓存, 条数/权重/过期时间可通过luna.redis.local-cache.namespaces单独配置
+ * 配置了权重(maximum-weight或maximum-weight-mb)时按权重淘汰, 否则按条数淘汰
+ * 权重为key的字符数*2加上值未压缩的序列化字节数, 是对堆内存占用的估算, 不包含对象头等开销, 实际占用通常更大
+ * 读取顺序: 本地 -> redis -> loader, loader加载的值写入redis和本地
+ * 开启luna.redis.local-cache.invalidation后, 其他节点写redis的key会在本地失效
+ * 配置refresh-after-write后, 到期的值先返回旧值, 再由{@link RedisRefreshLoader}合并为MGET异步刷新
+ * <p>
+ * 类型参数和localKey/redisValueUtil的getter/setter只为兼容旧版本保留, 不再使用; 旧版本的guava loadingCache已移除, 使用{@link #cache(String)}
+ *
+ * @param <K> 未使用, 兼容旧版本
+ * @param <T> 未使用, 兼容旧版本
  * @author chenzhangyue
  * 2023/2/1
  */
 @Component
-@Data
-public class LocalCacheUtil<K, T> {
+public class LocalCacheUtil<K, T> implements InitializingBean, DisposableBean {
+
+    public static final String DEFAULT_NAMESPACE = "default";
 
     @Autowired
     private RedisValueUtil redisValueUtil;
 
+    @Autowired
+    private RedisTypedSerializer redisTypedSerializer;
+
+    @Autowired
+    private RedisLunaProperties redisLunaProperties;
+
+    @Autowired(required = false)
+    private CacheInvalidator cacheInvalidator;
+
+    private final Map<String, Cache<String, Object>> caches = new ConcurrentHashMap<>();
+
+    private final List<BiConsumer<String, Cache<String, Object>>> cacheListeners = new CopyOnWriteArrayList<>();
+
+    private volatile RedisRefreshLoader refreshLoader;
+
+    @Deprecated
     private String localKey;
 
-    LoadingCache<String, Object> loadingCache = CacheBuilder.newBuilder()
-            .maximumSize(100L)
-            .expireAfterWrite(2L, TimeUnit.MINUTES)
+    @Override
+    public void afterPropertiesSet() {
+        if (cacheInvalidator != null) {
+            // 其他节点修改了key, 所有namespace中的该key失效
+            cacheInvalidator.addListener(keys -> caches.values().forEach(cache -> cache.invalidateAll(keys)));
+        }
+    }
 
-            .build(new CacheLoader<String, Object>() {
-                public Object load(String key) {
-                    return redisValueUtil.get(key);
-                }
-            });
+    @Override
+    public void destroy() {
+        if (refreshLoader != null) {
+            refreshLoader.shutdown();
+        }
+    }
 
-    @SneakyThrows
+    /**
+     * 默认namespace 本地 -> redis
+     *
+     * @param key redis key
+     * @return
+     */
     public Object get(String key) {
-        return loadingCache.get(key);
+        return cache(DEFAULT_NAMESPACE).get(key, redisValueUtil::get);
     }
 
+    /**
+     * 默认namespace 只写入本地
+     */
     public void set(String key, Object value) {
-        loadingCache.put(key, value);
+        cache(DEFAULT_NAMESPACE).put(key, value);
+    }
+
+    /**
+     * 本地 -> redis -> loader 同一个key并发加载时只加载一次
+     *
+     * @param namespace     本地缓存的namespace
+     * @param key           redis key
+     * @param typeReference 目标类型
+     * @param loader        redis中不存在时的加载方法 可以为null, 返回null时不缓存
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(String namespace, String key, TypeReference<V> typeReference, Function<String, V> loader) {
+        Cache<String, Object> cache = cache(namespace);
+        boolean[] loaded = new boolean[1];
+        V value = (V) cache.get(key, k -> {
+            V redisValue = redisValueUtil.get(k, typeReference);
+            if (redisValue == null && loader != null) {
+                redisValue = loader.apply(k);
+                loaded[0] = redisValue != null;
+            }
+            return redisValue;
+        });
+        if (loaded[0]) {
+            // 写redis会同步使本节点所有namespace中的该key失效, 不能在caffeine的加载方法中执行, 写入后重新放入本地
+            writeRedis(namespace, key, value);
+            cache.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * 批量获取 本地未命中的key通过一次MGET从redis获取(集群模式下按slot分组), 仍未命中的交给loader
+     *
+     * @param namespace     本地缓存的namespace
+     * @param keys          redis key
+     * @param typeReference 目标类型
+     * @param loader        批量加载方法 可以为null, 返回的map中不包含的key不缓存
+     * @return 存在的key -> 值
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Map<String, V> getAll(String namespace, Collection<String> keys, TypeReference<V> typeReference,
+        Function<Collection<String>, Map<String, V>> loader) {
+        Map<String, Object> values = cache(namespace).getAll(keys, missing -> {
+            List<String> missingKeys = new ArrayList<>();
+            missing.forEach(missingKeys::add);
+            List<V> redisValues = redisValueUtil.multiGet(missingKeys, typeReference);
+            Map<String, Object> loaded = new HashMap<>(missingKeys.size());
+            List<String> noCacheKeys = new ArrayList<>();
+            for (int i = 0; i < missingKeys.size(); i++) {
+                if (redisValues.get(i) == null) {
+                    noCacheKeys.add(missingKeys.get(i));
+                } else {
+                    loaded.put(missingKeys.get(i), redisValues.get(i));
+                }
+            }
+            if (loader != null && !noCacheKeys.isEmpty()) {
+                Map<String, V> loaderValues = loader.apply(noCacheKeys);
+                if (loaderValues != null && !loaderValues.isEmpty()) {
+                    Map<String, Object> write = new LinkedHashMap<>(loaderValues);
+                    write.values().removeIf(Objects::isNull);
+                    writeRedis(namespace, write);
+                    loaded.putAll(write);
+                }
+            }
+            return loaded;
+        });
+        return (Map<String, V>) (Map<String, ?>) values;
+    }
+
+    /**
+     * 写穿透 先写redis再写本地
+     *
+     * @param namespace 本地缓存的namespace
+     * @param key       redis key
+     * @param value     值
+     */
+    public void put(String namespace, String key, Object value) {
+        writeRedis(namespace, key, value);
+        cache(namespace).put(key, value);
+    }
+
+    public void invalidate(String namespace, String key) {
+        cache(namespace).invalidate(key);
+    }
+
+    public void invalidateAll(String namespace) {
+        cache(namespace).invalidateAll();
+    }
+
+    @Deprecated
+    public String getLocalKey() {
+        return localKey;
+    }
+
+    @Deprecated
+    public void setLocalKey(String localKey) {
+        this.localKey = localKey;
+    }
+
+    @Deprecated
+    public RedisValueUtil getRedisValueUtil() {
+        return redisValueUtil;
+    }
+
+    @Deprecated
+    public void setRedisValueUtil(RedisValueUtil redisValueUtil) {
+        this.redisValueUtil = redisValueUtil;
+    }
+
+    public Set<String> namespaces() {
+        return caches.keySet();
+    }
+
+    public Cache<String, Object> cache(String namespace) {
+        Cache<String, Object> cache = caches.get(namespace);
+        if (cache != null) {
+            return cache;
+        }
+        Cache<String, Object> created = build(namespace);
+        cache = caches.putIfAbsent(namespace, created);
+        if (cache == null) {
+            cacheListeners.forEach(listener -> listener.accept(namespace, created));
+            return created;
+        }
+        return cache;
+    }
+
+    /**
+     * 注册namespace缓存创建时的处理 已创建的缓存立即回调, 用于注册监控指标
+     *
+     * @param listener namespace -> 缓存
+     */
+    public void addCacheListener(BiConsumer<String, Cache<String, Object>> listener) {
+        cacheListeners.add(listener);
+        caches.forEach(listener);
+    }
+
+    /**
+     * 当前权重(字节) 按条数淘汰时为条数
+     */
+    public long weightedSize(String namespace) {
+        Cache<String, Object> cache = cache(namespace);
+        return cache.policy().eviction()
+            .map(eviction -> eviction.weightedSize().orElse(cache.estimatedSize()))
+            .orElse(cache.estimatedSize());
+    }
+
+    /**
+     * 最大权重(字节) 按条数淘汰时为最大条数
+     */
+    public long maximum(String namespace) {
+        return cache(namespace).policy().eviction().map(eviction -> eviction.getMaximum()).orElse(Long.MAX_VALUE);
+    }
+
+    private Cache<String, Object> build(String namespace) {
+        RedisLunaProperties.LocalCache config = redisLunaProperties.getLocalCache();
+        RedisLunaProperties.LocalCacheSpec spec = config.getNamespaces().get(namespace);
+        long maximumWeight = maximumWeight(config, spec);
+        long maximumSize = spec != null && spec.getMaximumSize() != null ? spec.getMaximumSize() : config.getMaximumSize();
+        Duration expireAfterWrite = spec != null && spec.getExpireAfterWrite() != null ? spec.getExpireAfterWrite() : config.getExpireAfterWrite();
+        Duration refreshAfterWrite = spec != null && spec.getRefreshAfterWrite() != null ? spec.getRefreshAfterWrite() : config.getRefreshAfterWrite();
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats();
+        if (maximumWeight > 0) {
+            RedisSerializer<Object> serializer = redisTypedSerializer.uncompressed();
+            builder.maximumWeight(maximumWeight).weigher((String key, Object value) -> weigh(serializer, key, value));
+        } else {
+            builder.maximumSize(maximumSize);
+        }
+        if (expireAfterWrite != null && !expireAfterWrite.isZero()) {
+            builder.expireAfterWrite(expireAfterWrite.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (refreshAfterWrite != null && !refreshAfterWrite.isZero()) {
+            builder.refreshAfterWrite(refreshAfterWrite.toNanos(), TimeUnit.NANOSECONDS);
+            return builder.build(refreshLoader());
+        }
+        return builder.build();
+    }
+
+    private RedisRefreshLoader refreshLoader() {
+        if (refreshLoader == null) {
+            synchronized (this) {
+                if (refreshLoader == null) {
+                    RedisLunaProperties.LocalCache config = redisLunaProperties.getLocalCache();
+                    refreshLoader = new RedisRefreshLoader(redisValueUtil, redisTypedSerializer, config.getRefreshThreads(),
+                        config.getRefreshQueueCapacity(), config.getRefreshBatchWindow().toNanos(), redisLunaProperties.getBatchSize());
+                }
+            }
+        }
+        return refreshLoader;
+    }
+
+    /**
+     * namespace的配置优先, MB优先于字节
+     */
+    private static long maximumWeight(RedisLunaProperties.LocalCache config, RedisLunaProperties.LocalCacheSpec spec) {
+        if (spec != null && spec.getMaximumWeightMb() != null) {
+            return spec.getMaximumWeightMb() * 1024 * 1024;
+        }
+        if (spec != null && spec.getMaximumWeight() != null) {
+            return spec.getMaximumWeight();
+        }
+        if (config.getMaximumWeightMb() > 0) {
+            return config.getMaximumWeightMb() * 1024 * 1024;
+        }
+        return config.getMaximumWeight();
+    }
+
+    private static int weigh(RedisSerializer<Object> serializer, String key, Object value) {
+        byte[] bytes = serializer.serialize(value);
+        long weight = (long) key.length() * 2 + (bytes == null ? 0 : bytes.length);
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private Duration redisTtl(String namespace) {
+        RedisLunaProperties.LocalCache config = redisLunaProperties.getLocalCache();
+        RedisLunaProperties.LocalCacheSpec spec = config.getNamespaces().get(namespace);
+        return spec != null && spec.getRedisTtl() != null ? spec.getRedisTtl() : config.getRedisTtl();
+    }
+
+    private void writeRedis(String namespace, String key, Object value) {
+        Duration ttl = redisTtl(namespace);
+        if (ttl == null || ttl.isZero()) {
+            redisValueUtil.set(key, value);
+        } else {
+            redisValueUtil.set(key, value, ttl.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void writeRedis(String namespace, Map<String, Object> values) {
+        Duration ttl = redisTtl(namespace);
+        if (ttl == null || ttl.isZero()) {
+            redisValueUtil.multiSet(values);
+        } else {
+            redisValueUtil.multiSet(values, ttl.toMillis(), 0, TimeUnit.MILLISECONDS);
+        }
     }
 }
@@ -0,0 +1,159 @@
+package io.github.lunasaw.util.cache;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.github.lunasaw.util.RedisValueUtil;
+import io.github.lunasaw.util.serializer.RedisTypedSerializer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 本地缓存的异步刷新 caffeine在值到达refreshAfterWrite后的读取中调用asyncReload, 读取方直接拿到旧值
+ * 时间窗口内到期的key合并为一次MGET, 在独立的有界线程池中执行; 线程池满或刷新失败时保留旧值
+ *
+ * @author luna
+ * 2026/10/17
+ */
+@Slf4j
+public class RedisRefreshLoader implements CacheLoader<String, Object> {
+
+    private final RedisValueUtil redisValueUtil;
+
+    private final RedisTypedSerializer redisTypedSerializer;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("redis-luna-refresh-timer-%d").setDaemon(true).build());
+
+    private final long windowNanos;
+
+    private final int maxBatchSize;
+
+    private final ConcurrentLinkedQueue<Reload> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public RedisRefreshLoader(RedisValueUtil redisValueUtil, RedisTypedSerializer redisTypedSerializer, int threads, int queueCapacity,
+        long windowNanos, int maxBatchSize) {
+        this.redisValueUtil = redisValueUtil;
+        this.redisTypedSerializer = redisTypedSerializer;
+        int size = Math.max(threads, 1);
+        this.executor = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(queueCapacity, 1)),
+                new ThreadFactoryBuilder().setNameFormat("redis-luna-refresh-%d").setDaemon(true).build(), new ThreadPoolExecutor.AbortPolicy());
+        this.windowNanos = Math.max(windowNanos, 0);
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+    }
+
+    @Override
+    public Object load(String key) {
+        return redisValueUtil.get(key);
+    }
+
+    @Override
+    public CompletableFuture<Object> asyncReload(String key, Object oldValue, Executor ignored) {
+        Reload reload = new Reload(key, oldValue);
+        pending.add(reload);
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::submit, windowNanos, TimeUnit.NANOSECONDS);
+        }
+        return reload.future;
+    }
+
+    private void submit() {
+        scheduled.set(false);
+        List<Reload> reloads = drain();
+        if (reloads.isEmpty()) {
+            return;
+        }
+        try {
+            executor.execute(() -> reload(reloads));
+        } catch (RejectedExecutionException e) {
+            log.warn("submit rejected::reloads = {}", reloads.size());
+            reloads.forEach(Reload::keep);
+        }
+    }
+
+    private List<Reload> drain() {
+        List<Reload> reloads = new ArrayList<>();
+        Reload reload;
+        while ((reload = pending.poll()) != null) {
+            reloads.add(reload);
+        }
+        return reloads;
+    }
+
+    private void reload(List<Reload> reloads) {
+        for (int from = 0; from < reloads.size(); from += maxBatchSize) {
+            List<Reload> batch = reloads.subList(from, Math.min(from + maxBatchSize, reloads.size()));
+            List<String> keys = new ArrayList<>(batch.size());
+            batch.forEach(reload -> keys.add(reload.key));
+            List<byte[]> values;
+            try {
+                values = redisValueUtil.multiGetRaw(keys);
+            } catch (Exception e) {
+                log.warn("reload::keys = {}", keys.size(), e);
+                batch.forEach(Reload::keep);
+                continue;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Reload reload = batch.get(i);
+                try {
+                    // redis中已不存在时返回null, 由caffeine移除该key
+                    reload.future.complete(values.get(i) == null ? null : serializer(reload.oldValue).deserialize(values.get(i)));
+                } catch (Exception e) {
+                    log.warn("reload::key = {}", reload.key, e);
+                    reload.keep();
+                }
+            }
+        }
+    }
+
+    /**
+     * 按旧值的类型反序列化, 容器类型按Object处理
+     */
+    private RedisSerializer<Object> serializer(Object oldValue) {
+        if (oldValue == null || oldValue instanceof Collection || oldValue instanceof Map || oldValue.getClass().isArray()) {
+            return redisTypedSerializer.forType(Object.class);
+        }
+        return redisTypedSerializer.forType(oldValue.getClass());
+    }
+
+    public void shutdown() {
+        scheduler.shutdown();
+        executor.shutdown();
+    }
+
+    private static class Reload {
+
+        private final String key;
+
+        private final Object oldValue;
+
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        private Reload(String key, Object oldValue) {
+            this.key = key;
+            this.oldValue = oldValue;
+        }
+
+        private void keep() {
+            future.complete(oldValue);
+        }
+    }
+}
@@ -1,51 +1,162 @@
 package io.github.lunasaw.util.config;
 
 import io.github.lunasaw.util.*;
+import io.github.lunasaw.util.batch.RedisBatchLoader;
+import io.github.lunasaw.util.cache.CacheInvalidator;
+import io.github.lunasaw.util.cache.HotKeyDetector;
 import io.github.lunasaw.util.cache.LocalCacheUtil;
+import io.github.lunasaw.util.script.RedisScriptRegistry;
+import io.github.lunasaw.util.serializer.AliasTypeResolverBuilder;
+import io.github.lunasaw.util.serializer.CompressionStats;
+import io.github.lunasaw.util.serializer.RedisTypeAlias;
+import io.github.lunasaw.util.serializer.RedisTypeRegistry;
+import io.github.lunasaw.util.serializer.RedisTypedSerializer;
+import io.github.lunasaw.util.support.RedisLunaExecutor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackages;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.util.ClassUtils;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author: luna
  */
 @Configuration
+@EnableConfigurationProperties(RedisLunaProperties.class)
 public class RedisConfiguration {
 
     @Bean
-    @SuppressWarnings("all")
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory) {
+    @ConditionalOnMissingBean
+    public RedisTypeRegistry redisTypeRegistry(RedisLunaProperties redisLunaProperties, BeanFactory beanFactory) {
+        RedisLunaProperties.Serializer serializer = redisLunaProperties.getSerializer();
+        RedisTypeRegistry registry = new RedisTypeRegistry();
+        serializer.getTypeAliases().forEach(registry::register);
+
+        List<String> packages = serializer.getTypeAliasPackages();
+        if (packages.isEmpty() && AutoConfigurationPackages.has(beanFactory)) {
+            packages = AutoConfigurationPackages.get(beanFactory);
+        }
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(RedisTypeAlias.class));
+        for (String basePackage : packages) {
+            for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage)) {
+                Class<?> type = ClassUtils.resolveClassName(candidate.getBeanClassName(), ClassUtils.getDefaultClassLoader());
+                registry.register(type.getAnnotation(RedisTypeAlias.class).value(), type);
+            }
+        }
+        return registry;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RedisTypedSerializer redisTypedSerializer(RedisLunaProperties redisLunaProperties, RedisTypeRegistry redisTypeRegistry) {
+        ObjectMapper om = configureObjectMapper(new ObjectMapper(), redisTypeRegistry);
+        // smile与json使用相同的配置, 类型信息的读写方式保持一致
+        ObjectMapper smileOm = configureObjectMapper(new ObjectMapper(new SmileFactory()), redisTypeRegistry);
+        RedisLunaProperties.Serializer serializer = redisLunaProperties.getSerializer();
+        return new RedisTypedSerializer(om, smileOm, serializer.getCodec(), serializer.getCompressThreshold());
+    }
+
+    private static ObjectMapper configureObjectMapper(ObjectMapper om, RedisTypeRegistry redisTypeRegistry) {
+        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        // 等同于 enableDefaultTyping(NON_FINAL), 注册过标识的类型写入标识而不是类名
+        om.setDefaultTyping(new AliasTypeResolverBuilder(redisTypeRegistry));
+        return om;
+    }
+
+    @Bean
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory, RedisTypedSerializer redisTypedSerializer) {
         RedisTemplate<String, Object> template = new RedisTemplate<String, Object>();
         template.setConnectionFactory(factory);
-        Jackson2JsonRedisSerializer jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer(Object.class);
-        ObjectMapper om = new ObjectMapper();
-        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        om.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
-        jackson2JsonRedisSerializer.setObjectMapper(om);
+        RedisSerializer<Object> valueSerializer = redisTypedSerializer.forType(Object.class);
         StringRedisSerializer stringRedisSerializer = new StringRedisSerializer();
         // key采用String的序列化方式
         template.setKeySerializer(stringRedisSerializer);
         // hash的key也采用String的序列化方式
         template.setHashKeySerializer(stringRedisSerializer);
-        // value序列化方式采用jackson
-        template.setValueSerializer(jackson2JsonRedisSerializer);
+        // value序列化方式采用jackson 格式由luna.redis.serializer.codec指定
+        template.setValueSerializer(valueSerializer);
         // hash的value序列化方式采用jackson
-        template.setHashValueSerializer(jackson2JsonRedisSerializer);
+        template.setHashValueSerializer(valueSerializer);
         template.afterPropertiesSet();
         return template;
     }
 
     @Bean
     @ConditionalOnMissingBean
-    public LocalCacheUtil localCacheUtil() {
-        return new LocalCacheUtil();
+    public RedisLunaExecutor redisLunaExecutor(RedisLunaProperties redisLunaProperties) {
+        RedisLunaProperties.Executor executor = redisLunaProperties.getExecutor();
+        return new RedisLunaExecutor(executor.getThreads(), executor.getQueueCapacity());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "luna.redis.local-cache.invalidation", name = "enabled", havingValue = "true")
+    public CacheInvalidator cacheInvalidator(RedisTemplate<String, Object> redisTemplate, RedisTypedSerializer redisTypedSerializer,
+        RedisLunaProperties redisLunaProperties) {
+        RedisLunaProperties.Invalidation invalidation = redisLunaProperties.getLocalCache().getInvalidation();
+        return new CacheInvalidator(redisTemplate, redisTypedSerializer, invalidation.getChannel(), invalidation.getWindow().toMillis(),
+            invalidation.getMaxBatchSize());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "cacheInvalidationListenerContainer")
+    @ConditionalOnProperty(prefix = "luna.redis.local-cache.invalidation", name = "enabled", havingValue = "true")
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory redisConnectionFactory,
+        CacheInvalidator cacheInvalidator) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(cacheInvalidator, new ChannelTopic(cacheInvalidator.getChannel()));
+        return container;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "luna.redis.hot-key", name = "enabled", havingValue = "true")
+    public HotKeyDetector hotKeyDetector(RedisLunaProperties redisLunaProperties) {
+        RedisLunaProperties.HotKey hotKey = redisLunaProperties.getHotKey();
+        return new HotKeyDetector(hotKey.getThreshold(), hotKey.getWindow().toMillis(), hotKey.getTopK(), hotKey.getLocalTtl().toMillis(),
+            hotKey.getWidth(), hotKey.getDepth());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RedisScriptRegistry redisScriptRegistry(RedisTemplate<String, Object> redisTemplate, RedisLunaProperties redisLunaProperties) {
+        RedisLunaProperties.Script script = redisLunaProperties.getScript();
+        return new RedisScriptRegistry(redisTemplate, script.getLocations(), script.isPreload());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public LocalCacheUtil<?, ?> localCacheUtil() {
+        return new LocalCacheUtil<>();
     }
 
     @Bean
@@ -95,4 +206,75 @@ public class RedisConfiguration {
     public RedisStreamUtil redisStreamUtil() {
         return new RedisStreamUtil();
     }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RedisLeaseUtil redisLeaseUtil() {
+        return new RedisLeaseUtil();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RedisBloomFilterUtil redisBloomFilterUtil() {
+        return new RedisBloomFilterUtil();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RedisBatchUtil redisBatchUtil() {
+        return new RedisBatchUtil();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "luna.redis.batch-loader", name = "enabled", havingValue = "true")
+    public RedisBatchLoader redisBatchLoader(RedisTemplate<String, Object> redisTemplate, RedisTypedSerializer redisTypedSerializer,
+                                             RedisLunaProperties redisLunaProperties) {
+        RedisLunaProperties.BatchLoader batchLoader = redisLunaProperties.getBatchLoader();
+        return new RedisBatchLoader(redisTemplate, redisTypedSerializer, batchLoader.getWindow().toNanos(),
+                batchLoader.getMaxBatchSize(), batchLoader.getThreads());
+    }
+
+    @Configuration
+    @ConditionalOnClass(MeterBinder.class)
+    static class RedisMetricsConfiguration {
+
+        @Bean
+        public MeterBinder redisCompressionMetrics(RedisTypedSerializer redisTypedSerializer) {
+            CompressionStats stats = redisTypedSerializer.getCompressionStats();
+            return registry -> {
+                FunctionTimer.builder("luna.redis.compression.compress", stats, CompressionStats::getCompressCount,
+                        CompressionStats::getCompressNanos, TimeUnit.NANOSECONDS).register(registry);
+                FunctionTimer.builder("luna.redis.compression.decompress", stats, CompressionStats::getDecompressCount,
+                        CompressionStats::getDecompressNanos, TimeUnit.NANOSECONDS).register(registry);
+                FunctionCounter.builder("luna.redis.compression.raw.bytes", stats, CompressionStats::getRawBytes).register(registry);
+                FunctionCounter.builder("luna.redis.compression.compressed.bytes", stats, CompressionStats::getCompressedBytes).register(registry);
+                FunctionCounter.builder("luna.redis.compression.skipped", stats, CompressionStats::getSkipCount).register(registry);
+                Gauge.builder("luna.redis.compression.ratio", stats, CompressionStats::getRatio).register(registry);
+            };
+        }
+
+        @Bean
+        public MeterBinder redisLocalCacheMetrics(LocalCacheUtil<?, ?> localCacheUtil) {
+            // namespace缓存按需创建, 创建时再注册
+            return registry -> localCacheUtil.addCacheListener((namespace, cache) -> {
+                Tags tags = Tags.of("namespace", namespace);
+                CaffeineCacheMetrics.monitor(registry, cache, "luna.redis.local-cache", tags);
+                Gauge.builder("luna.redis.local-cache.weight", localCacheUtil, util -> util.weightedSize(namespace))
+                    .tags(tags).register(registry);
+                Gauge.builder("luna.redis.local-cache.max.weight", localCacheUtil, util -> util.maximum(namespace))
+                    .tags(tags).register(registry);
+            });
+        }
+
+        @Bean
+        public MeterBinder redisHotKeyMetrics(ObjectProvider<HotKeyDetector> hotKeyDetector) {
+            // 热点key列表通过HotKeyDetector#getHotKeys获取, 作为tag注册会导致指标基数不可控
+            return registry -> hotKeyDetector.ifAvailable(detector -> {
+                Gauge.builder("luna.redis.hotkey.count", detector, HotKeyDetector::getHotKeyCount).register(registry);
+                FunctionCounter.builder("luna.redis.hotkey.local.hits", detector, HotKeyDetector::getHits).register(registry);
+                FunctionCounter.builder("luna.redis.hotkey.promotions", detector, HotKeyDetector::getPromotions).register(registry);
+            });
+        }
+    }
 }
@@ -0,0 +1,281 @@
+package io.github.lunasaw.util.config;
+
+import io.github.lunasaw.util.serializer.RedisCodec;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * redis-luna-starter 配置
+ *
+ * @author luna
+ * 2026/10/17
+ */
+@Data
+@ConfigurationProperties(prefix = "luna.redis")
+public class RedisLunaProperties {
+
+    /**
+     * 单条批量命令(HMGET等)的最大元素数, 超过时拆分为多条命令并通过pipeline一次发送
+     */
+    private int batchSize = 500;
+
+    /**
+     * SCAN 每次迭代的COUNT提示值
+     */
+    private long scanCount = 1000;
+
+    private Serializer serializer = new Serializer();
+
+    private BatchLoader batchLoader = new BatchLoader();
+
+    private Script script = new Script();
+
+    private Executor executor = new Executor();
+
+    private Bloom bloom = new Bloom();
+
+    private LocalCache localCache = new LocalCache();
+
+    private HotKey hotKey = new HotKey();
+
+    @Data
+    public static class Serializer {
+
+        /**
+         * value写入格式, 读取时总是兼容所有格式
+         * 滚动切换时先让所有节点升级到可读新格式的版本, 再修改此配置
+         */
+        private RedisCodec codec = RedisCodec.JSON;
+
+        /**
+         * 序列化后超过该字节数的value使用LZ4压缩, 小于等于0时不压缩
+         * 对value和hash value同时生效, 读取时总是识别压缩数据
+         */
+        private int compressThreshold = 0;
+
+        /**
+         * 类型标识 -> 类型, 写入时用标识代替完整类名
+         * 读写双方需要配置相同的标识, 滚动切换时先发布配置了标识的读取方
+         */
+        private Map<String, Class<?>> typeAliases = new HashMap<>();
+
+        /**
+         * 扫描 {@link io.github.lunasaw.util.serializer.RedisTypeAlias} 的包, 为空时扫描应用的自动配置包
+         */
+        private List<String> typeAliasPackages = new ArrayList<>();
+    }
+
+    @Data
+    public static class BatchLoader {
+
+        /**
+         * 是否启用 {@link io.github.lunasaw.util.batch.RedisBatchLoader}
+         */
+        private boolean enabled = false;
+
+        /**
+         * 合并读取的时间窗口
+         */
+        private Duration window = Duration.ofMillis(2);
+
+        /**
+         * 单批最多合并的读取数, 达到后立即发送
+         */
+        private int maxBatchSize = 128;
+
+        /**
+         * 发送批次的线程数
+         */
+        private int threads = 2;
+    }
+
+    @Data
+    public static class Script {
+
+        /**
+         * lua脚本位置 以文件名(不含扩展名)作为脚本名注册
+         */
+        private List<String> locations = new ArrayList<>(Collections.singletonList("classpath*:lua/*.lua"));
+
+        /**
+         * 启动时是否通过SCRIPT LOAD预加载所有脚本
+         */
+        private boolean preload = true;
+    }
+
+    @Data
+    public static class Executor {
+
+        /**
+         * 并行发送命令(按slot分组删除等)的线程数
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * 等待队列长度 队列满时由调用线程执行
+         */
+        private int queueCapacity = 1024;
+    }
+
+    @Data
+    public static class Bloom {
+
+        /**
+         * 默认预计元素个数
+         */
+        private long expectedInsertions = 1_000_000;
+
+        /**
+         * 默认误判率
+         */
+        private double fpp = 0.01;
+
+        /**
+         * 默认分片数 每个分片一个bitmap key, 超大集合拆分到多个key以分散到集群各节点
+         */
+        private int shards = 1;
+    }
+
+    @Data
+    public static class LocalCache {
+
+        /**
+         * 默认最大条数
+         */
+        private long maximumSize = 10_000;
+
+        /**
+         * 默认最大权重(字节) 按key和值未压缩的序列化大小估算, 大于0时代替maximumSize
+         */
+        private long maximumWeight = 0;
+
+        /**
+         * 默认最大权重(MB) 大于0时代替maximumWeight, 便于按堆内存预算配置
+         */
+        private long maximumWeightMb = 0;
+
+        /**
+         * 本地缓存写入后的过期时间
+         */
+        private Duration expireAfterWrite = Duration.ofMinutes(2);
+
+        /**
+         * 回源加载或写穿透写入redis时的过期时间 0为不过期
+         */
+        private Duration redisTtl = Duration.ofMinutes(30);
+
+        /**
+         * 写入后超过该时间的值在下次读取时先返回旧值, 再异步从redis重新加载 为空时不刷新
+         * 应小于expireAfterWrite
+         */
+        private Duration refreshAfterWrite;
+
+        /**
+         * 异步刷新的线程数
+         */
+        private int refreshThreads = 2;
+
+        /**
+         * 异步刷新的等待队列长度 队列满时放弃本次刷新, 继续使用旧值
+         */
+        private int refreshQueueCapacity = 1024;
+
+        /**
+         * 合并刷新的时间窗口 窗口内到期的key合并为一次MGET
+         */
+        private Duration refreshBatchWindow = Duration.ofMillis(2);
+
+        /**
+         * 按namespace覆盖默认配置 未配置的项使用默认值
+         */
+        private Map<String, LocalCacheSpec> namespaces = new HashMap<>();
+
+        private Invalidation invalidation = new Invalidation();
+    }
+
+    @Data
+    public static class Invalidation {
+
+        /**
+         * 是否通过pub/sub广播本地缓存失效 开启后写redis的key会通知其他节点
+         */
+        private boolean enabled = false;
+
+        /**
+         * 失效消息的频道
+         */
+        private String channel = "luna:local-cache:invalidate";
+
+        /**
+         * 合并失效消息的时间窗口
+         */
+        private Duration window = Duration.ofMillis(5);
+
+        /**
+         * 单条消息最多包含的key个数
+         */
+        private int maxBatchSize = 1000;
+    }
+
+    @Data
+    public static class HotKey {
+
+        /**
+         * 是否开启热点key探测 对RedisValueUtil.get和RedisHashUtil.get/multiGet生效
+         */
+        private boolean enabled = false;
+
+        /**
+         * 成为热点的访问次数 计数每个窗口减半, 持续访问时约为每窗口访问次数的2倍
+         */
+        private long threshold = 1000;
+
+        /**
+         * 计数衰减的时间窗口
+         */
+        private Duration window = Duration.ofSeconds(1);
+
+        /**
+         * 最多同时保留的热点key个数
+         */
+        private int topK = 100;
+
+        /**
+         * 热点值在本地的缓存时间
+         */
+        private Duration localTtl = Duration.ofSeconds(1);
+
+        /**
+         * count-min sketch 每行的计数器个数
+         */
+        private int width = 4096;
+
+        /**
+         * count-min sketch 的行数
+         */
+        private int depth = 4;
+    }
+
+    @Data
+    public static class LocalCacheSpec {
+
+        private Long maximumSize;
+
+        private Long maximumWeight;
+
+        private Long maximumWeightMb;
+
+        private Duration expireAfterWrite;
+
+        private Duration redisTtl;
+
+        private Duration refreshAfterWrite;
+    }
+}
@@ -0,0 +1,141 @@
+package io.github.lunasaw.util.script;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.FileCopyUtils;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 脚本注册表
+ * 每个脚本只计算一次SHA1, 执行时优先EVALSHA, 启动时可通过SCRIPT LOAD预加载, 之后只需发送SHA1
+ * classpath下的 .lua 文件以文件名(不含扩展名)作为脚本名注册
+ *
+ * @author luna
+ * 2026/10/17
+ */
+@Slf4j
+public class RedisScriptRegistry implements InitializingBean, SmartInitializingSingleton {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final List<String> locations;
+
+    private final boolean preload;
+
+    /**
+     * 脚本名 -> 脚本内容
+     */
+    private final Map<String, String> scriptTexts = new ConcurrentHashMap<>();
+
+    /**
+     * 脚本内容 -> 返回类型 -> 脚本
+     */
+    private final Map<String, Map<Class<?>, RedisScript<?>>> scripts = new ConcurrentHashMap<>();
+
+    public RedisScriptRegistry(RedisTemplate<String, Object> redisTemplate, List<String> locations, boolean preload) {
+        this.redisTemplate = redisTemplate;
+        this.locations = locations;
+        this.preload = preload;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        register("luna_hset_expire", RedisScripts.HSET_EXPIRE.getScriptAsString());
+        register("luna_push_expire", RedisScripts.PUSH_EXPIRE.getScriptAsString());
+        register("luna_sadd_expire", RedisScripts.SADD_EXPIRE.getScriptAsString());
+        register("luna_lease_acquire", RedisScripts.LEASE_ACQUIRE.getScriptAsString());
+        register("luna_lease_release", RedisScripts.LEASE_RELEASE.getScriptAsString());
+
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        for (String location : locations) {
+            for (Resource resource : resolver.getResources(location)) {
+                String name = StringUtils.removeEnd(resource.getFilename(), ".lua");
+                try (Reader reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+                    register(name, FileCopyUtils.copyToString(reader));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (preload) {
+            load();
+        }
+    }
+
+    /**
+     * 注册脚本 同名脚本会被覆盖
+     *
+     * @param name       脚本名
+     * @param scriptText 脚本内容
+     */
+    public void register(String name, String scriptText) {
+        String exist = scriptTexts.put(name, scriptText);
+        if (exist != null && !exist.equals(scriptText)) {
+            log.warn("register::script {} replaced", name);
+        }
+    }
+
+    /**
+     * 获取已注册的脚本
+     *
+     * @param name       脚本名
+     * @param resultType 返回类型 支持Long/Boolean/List/String等
+     * @return
+     */
+    public <T> RedisScript<T> get(String name, Class<T> resultType) {
+        String scriptText = scriptTexts.get(name);
+        if (scriptText == null) {
+            throw new IllegalArgumentException("redis script " + name + " not registered");
+        }
+        return of(scriptText, resultType);
+    }
+
+    /**
+     * 按脚本内容获取脚本 相同内容只创建一次
+     *
+     * @param scriptText 脚本内容
+     * @param resultType 返回类型
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RedisScript<T> of(String scriptText, Class<T> resultType) {
+        return (RedisScript<T>) scripts.computeIfAbsent(scriptText, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(resultType, type -> new DefaultRedisScript<>(scriptText, resultType));
+    }
+
+    public boolean contains(String name) {
+        return scriptTexts.containsKey(name);
+    }
+
+    /**
+     * SCRIPT LOAD 所有已注册的脚本, 集群模式下加载到所有节点
+     * 失败只记录日志, 执行时会回退到EVAL
+     */
+    public void load() {
+        scriptTexts.forEach((name, scriptText) -> {
+            try {
+                byte[] script = scriptText.getBytes(StandardCharsets.UTF_8);
+                redisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands().scriptLoad(script));
+            } catch (Exception e) {
+                log.warn("load::name = {}", name, e);
+            }
+        });
+    }
+}
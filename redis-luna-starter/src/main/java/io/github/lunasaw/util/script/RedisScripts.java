@@ -0,0 +1,105 @@
+package io.github.lunasaw.util.script;
+
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内置lua脚本 写入数据与设置过期时间在一个脚本内完成, 一次往返且保证原子性
+ * 参数均为已序列化的字节, 带过期时间的脚本 ARGV[1] 固定为过期时间(毫秒)
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public final class RedisScripts {
+
+    private RedisScripts() {
+    }
+
+    /**
+     * HSET 多个field后设置过期时间
+     * ARGV[2..] field, value 交替
+     * 返回 PEXPIRE 的结果
+     */
+    public static final RedisScript<Long> HSET_EXPIRE = new DefaultRedisScript<>(
+            "for i = 2, #ARGV, 1000 do\n" +
+                    "    redis.call('HSET', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV)))\n" +
+                    "end\n" +
+                    "return redis.call('PEXPIRE', KEYS[1], ARGV[1])", Long.class);
+
+    /**
+     * RPUSH/LPUSH 后设置过期时间
+     * ARGV[2] 为 RPUSH 或 LPUSH, ARGV[3..] 为元素
+     * 返回 push 后list的长度
+     */
+    public static final RedisScript<Long> PUSH_EXPIRE = new DefaultRedisScript<>(
+            "local size = 0\n" +
+                    "for i = 3, #ARGV, 1000 do\n" +
+                    "    size = redis.call(ARGV[2], KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV)))\n" +
+                    "end\n" +
+                    "redis.call('PEXPIRE', KEYS[1], ARGV[1])\n" +
+                    "return size", Long.class);
+
+    /**
+     * SADD 后设置过期时间
+     * ARGV[2..] 为元素
+     * 返回新增的元素个数
+     */
+    public static final RedisScript<Long> SADD_EXPIRE = new DefaultRedisScript<>(
+            "local added = 0\n" +
+                    "for i = 2, #ARGV, 1000 do\n" +
+                    "    added = added + redis.call('SADD', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV)))\n" +
+                    "end\n" +
+                    "redis.call('PEXPIRE', KEYS[1], ARGV[1])\n" +
+                    "return added", Long.class);
+
+    /**
+     * 批量获取租约 对每个key执行 SET NX PX
+     * ARGV[2] 为租约持有者的token
+     * 返回与KEYS一一对应的列表, 1为获取成功 0为已被其他持有者占用
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> LEASE_ACQUIRE = new DefaultRedisScript<>(
+            "local result = {}\n" +
+                    "for i = 1, #KEYS do\n" +
+                    "    if redis.call('SET', KEYS[i], ARGV[2], 'NX', 'PX', ARGV[1]) then\n" +
+                    "        result[i] = 1\n" +
+                    "    else\n" +
+                    "        result[i] = 0\n" +
+                    "    end\n" +
+                    "end\n" +
+                    "return result", List.class);
+
+    /**
+     * 批量释放租约 只删除仍由自己持有的key
+     * ARGV[1] 为租约持有者的token
+     * 返回释放的个数
+     */
+    public static final RedisScript<Long> LEASE_RELEASE = new DefaultRedisScript<>(
+            "local released = 0\n" +
+                    "for i = 1, #KEYS do\n" +
+                    "    if redis.call('GET', KEYS[i]) == ARGV[1] then\n" +
+                    "        released = released + redis.call('DEL', KEYS[i])\n" +
+                    "    end\n" +
+                    "end\n" +
+                    "return released", Long.class);
+
+    /**
+     * 过期时间参数
+     *
+     * @param time     时间
+     * @param timeUnit 单位 为null时按秒处理
+     * @return 毫秒数的字节
+     */
+    public static byte[] ttlArg(long time, TimeUnit timeUnit) {
+        long millis = (timeUnit == null ? TimeUnit.SECONDS : timeUnit).toMillis(time);
+        return String.valueOf(millis).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] stringArg(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
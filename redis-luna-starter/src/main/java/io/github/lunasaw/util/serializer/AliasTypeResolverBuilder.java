@@ -0,0 +1,88 @@
+package io.github.lunasaw.util.serializer;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.ClassNameIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * 与 enableDefaultTyping(NON_FINAL) 行为一致的类型解析, 已注册的类型使用 {@link RedisTypeRegistry} 中的标识代替类名
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class AliasTypeResolverBuilder extends ObjectMapper.DefaultTypeResolverBuilder {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient RedisTypeRegistry registry;
+
+    public AliasTypeResolverBuilder(RedisTypeRegistry registry) {
+        super(ObjectMapper.DefaultTyping.NON_FINAL, LaissezFaireSubTypeValidator.instance);
+        this.registry = registry;
+        init(JsonTypeInfo.Id.CLASS, null);
+        inclusion(JsonTypeInfo.As.WRAPPER_ARRAY);
+    }
+
+    private AliasTypeResolverBuilder(AliasTypeResolverBuilder base, Class<?> defaultImpl) {
+        super(base, defaultImpl);
+        this.registry = base.registry;
+    }
+
+    @Override
+    public ObjectMapper.DefaultTypeResolverBuilder withDefaultImpl(Class<?> defaultImpl) {
+        if (_defaultImpl == defaultImpl) {
+            return this;
+        }
+        return new AliasTypeResolverBuilder(this, defaultImpl);
+    }
+
+    @Override
+    protected TypeIdResolver idResolver(MapperConfig<?> config, JavaType baseType, PolymorphicTypeValidator subtypeValidator,
+                                        Collection<NamedType> subtypes, boolean forSer, boolean forDeser) {
+        return new AliasTypeIdResolver(baseType, config.getTypeFactory(), subtypeValidator, registry);
+    }
+
+    static class AliasTypeIdResolver extends ClassNameIdResolver {
+
+        private final RedisTypeRegistry registry;
+
+        AliasTypeIdResolver(JavaType baseType, TypeFactory typeFactory, PolymorphicTypeValidator ptv, RedisTypeRegistry registry) {
+            super(baseType, typeFactory, ptv);
+            this.registry = registry;
+        }
+
+        @Override
+        public String idFromValue(Object value) {
+            return idFromValueAndType(value, value.getClass());
+        }
+
+        @Override
+        public String idFromValueAndType(Object value, Class<?> type) {
+            String alias = registry.getAlias(type);
+            if (alias != null) {
+                return alias;
+            }
+            return super.idFromValueAndType(value, type);
+        }
+
+        @Override
+        public JavaType typeFromId(DatabindContext context, String id) throws IOException {
+            Class<?> type = registry.getType(id);
+            if (type != null) {
+                return _typeFactory.constructSpecializedType(_baseType, type);
+            }
+            return super.typeFromId(context, id);
+        }
+    }
+}
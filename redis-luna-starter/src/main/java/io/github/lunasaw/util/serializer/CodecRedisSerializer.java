@@ -0,0 +1,135 @@
+package io.github.lunasaw.util.serializer;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * 按格式标记读写的序列化器, 按配置的格式写入, 读取时兼容所有格式
+ * 读取时与写入使用相同的类型标识: 写入时带类型标识的类型(非final)先按Object读取, 与目标类型不一致(泛型/容器/数值类型不同)时再转换,
+ * 不带类型标识的类型(final)直接按目标类型读取
+ * {@link NullValue} 编码为单字节0x00, 用于缓存不存在的数据, 目标类型可以接收NullValue或指定keepNullValue时才返回NullValue, 否则返回null
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class CodecRedisSerializer<T> implements RedisSerializer<T> {
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private static final byte NULL_TAG = 0x00;
+
+    private static final byte[] NULL_VALUE = new byte[] {NULL_TAG};
+
+    private final RedisCodec codec;
+
+    private final ObjectMapper jsonMapper;
+
+    private final ObjectMapper smileMapper;
+
+    private final ObjectReader jsonReader;
+
+    private final ObjectReader smileReader;
+
+    private final JavaType javaType;
+
+    private final ObjectMapper convertMapper;
+
+    private final boolean direct;
+
+    private final boolean acceptNullValue;
+
+    /**
+     * @param javaType      读取的目标类型
+     * @param convertMapper 不带类型标识的ObjectMapper, 用于转换为目标类型
+     * @param keepNullValue 空值标记是否总是返回NullValue 只用于缓存读取, 需要区分不存在和已缓存的空值
+     */
+    public CodecRedisSerializer(JavaType javaType, RedisCodec codec, ObjectMapper jsonMapper, ObjectMapper smileMapper, ObjectMapper convertMapper,
+        boolean keepNullValue) {
+        this.codec = codec;
+        this.jsonMapper = jsonMapper;
+        this.smileMapper = smileMapper;
+        this.javaType = javaType;
+        this.convertMapper = convertMapper;
+        boolean typed = hasTypeId(jsonMapper, javaType);
+        this.jsonReader = jsonMapper.readerFor(typed ? jsonMapper.constructType(Object.class) : javaType);
+        this.smileReader = smileMapper.readerFor(typed ? smileMapper.constructType(Object.class) : javaType);
+        this.direct = !typed || javaType.getRawClass() == Object.class;
+        this.acceptNullValue = keepNullValue || javaType.getRawClass().isAssignableFrom(NullValue.class);
+    }
+
+    @Override
+    public byte[] serialize(T t) throws SerializationException {
+        if (t == null) {
+            return EMPTY_ARRAY;
+        }
+        if (t instanceof NullValue) {
+            return NULL_VALUE.clone();
+        }
+        try {
+            if (codec == RedisCodec.JSON) {
+                return jsonMapper.writeValueAsBytes(t);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+            out.write(codec.getTag());
+            smileMapper.writeValue(out, t);
+            return out.toByteArray();
+        } catch (Exception ex) {
+            throw new SerializationException("Could not write " + codec + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes.length == 1 && bytes[0] == NULL_TAG) {
+            return acceptNullValue ? (T) NullValue.INSTANCE : null;
+        }
+        RedisCodec format = RedisCodec.detect(bytes);
+        Object value;
+        try {
+            if (format == RedisCodec.SMILE) {
+                value = smileReader.readValue(bytes, 1, bytes.length - 1);
+            } else {
+                value = jsonReader.readValue(bytes);
+            }
+        } catch (Exception ex) {
+            throw new SerializationException("Could not read " + format + ": " + ex.getMessage(), ex);
+        }
+        return convert(value);
+    }
+
+    /**
+     * 写入该类型的值时是否写出类型标识
+     */
+    private static boolean hasTypeId(ObjectMapper mapper, JavaType javaType) {
+        try {
+            return mapper.getSerializerProviderInstance().findTypeSerializer(javaType) != null;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    /**
+     * 直接读取为目标类型, 或非泛型类型且已是目标类型的实例时直接返回, 否则转换
+     */
+    @SuppressWarnings("unchecked")
+    private T convert(Object value) {
+        if (value == null || direct || (!javaType.hasContentType() && !javaType.hasGenericTypes() && javaType.getRawClass().isInstance(value))) {
+            return (T) value;
+        }
+        try {
+            return convertMapper.convertValue(value, javaType);
+        } catch (IllegalArgumentException ex) {
+            throw new SerializationException("Could not convert to " + javaType + ": " + ex.getMessage(), ex);
+        }
+    }
+}
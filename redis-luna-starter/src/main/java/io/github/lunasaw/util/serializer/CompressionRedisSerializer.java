@@ -0,0 +1,91 @@
+package io.github.lunasaw.util.serializer;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 按阈值压缩的序列化器
+ * 超过阈值的数据使用LZ4压缩, 格式为 [标记 0x02][原始长度 4字节][压缩数据], 小数据保持原样
+ * 读取时总是识别压缩标记, 关闭压缩后历史数据仍可读
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class CompressionRedisSerializer<T> implements RedisSerializer<T> {
+
+    public static final byte LZ4_TAG = 0x02;
+
+    private static final int HEADER_LENGTH = 5;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private final RedisSerializer<T> delegate;
+
+    /**
+     * 压缩阈值(字节) 小于等于0时不压缩
+     */
+    private final int threshold;
+
+    private final CompressionStats stats;
+
+    public CompressionRedisSerializer(RedisSerializer<T> delegate, int threshold, CompressionStats stats) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+        this.stats = stats;
+    }
+
+    @Override
+    public byte[] serialize(T t) throws SerializationException {
+        byte[] bytes = delegate.serialize(t);
+        if (threshold <= 0 || bytes == null || bytes.length <= threshold) {
+            return bytes;
+        }
+        long start = System.nanoTime();
+        byte[] compressed = new byte[HEADER_LENGTH + COMPRESSOR.maxCompressedLength(bytes.length)];
+        int length = COMPRESSOR.compress(bytes, 0, bytes.length, compressed, HEADER_LENGTH);
+        if (HEADER_LENGTH + length >= bytes.length) {
+            // 压缩无收益 保持原样, 压缩耗时仍计入统计
+            stats.recordSkip(bytes.length, System.nanoTime() - start);
+            return bytes;
+        }
+        compressed[0] = LZ4_TAG;
+        writeInt(compressed, 1, bytes.length);
+        byte[] result = new byte[HEADER_LENGTH + length];
+        System.arraycopy(compressed, 0, result, 0, result.length);
+        stats.recordCompress(bytes.length, result.length, System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length < HEADER_LENGTH || bytes[0] != LZ4_TAG) {
+            return delegate.deserialize(bytes);
+        }
+        long start = System.nanoTime();
+        byte[] raw;
+        try {
+            raw = DECOMPRESSOR.decompress(bytes, HEADER_LENGTH, readInt(bytes, 1));
+        } catch (Exception ex) {
+            throw new SerializationException("Could not decompress LZ4: " + ex.getMessage(), ex);
+        }
+        stats.recordDecompress(System.nanoTime() - start);
+        return delegate.deserialize(raw);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+}
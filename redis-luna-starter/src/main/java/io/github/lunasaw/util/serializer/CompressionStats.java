@@ -0,0 +1,92 @@
+package io.github.lunasaw.util.serializer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压缩统计
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class CompressionStats {
+
+    private final LongAdder compressCount = new LongAdder();
+
+    private final LongAdder compressNanos = new LongAdder();
+
+    private final LongAdder rawBytes = new LongAdder();
+
+    private final LongAdder compressedBytes = new LongAdder();
+
+    private final LongAdder skipCount = new LongAdder();
+
+    private final LongAdder decompressCount = new LongAdder();
+
+    private final LongAdder decompressNanos = new LongAdder();
+
+    void recordCompress(int raw, int compressed, long nanos) {
+        compressCount.increment();
+        compressNanos.add(nanos);
+        rawBytes.add(raw);
+        compressedBytes.add(compressed);
+    }
+
+    /**
+     * 尝试压缩但无收益, 按原样存储
+     */
+    void recordSkip(int raw, long nanos) {
+        recordCompress(raw, raw, nanos);
+        skipCount.increment();
+    }
+
+    void recordDecompress(long nanos) {
+        decompressCount.increment();
+        decompressNanos.add(nanos);
+    }
+
+    public long getCompressCount() {
+        return compressCount.sum();
+    }
+
+    public long getCompressNanos() {
+        return compressNanos.sum();
+    }
+
+    public long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * 压缩无收益的次数 包含在compressCount中
+     *
+     * @return
+     */
+    public long getSkipCount() {
+        return skipCount.sum();
+    }
+
+    public long getDecompressCount() {
+        return decompressCount.sum();
+    }
+
+    public long getDecompressNanos() {
+        return decompressNanos.sum();
+    }
+
+    /**
+     * 压缩率 实际存储的字节数/压缩前字节数, 包含压缩无收益按原样存储的值 未压缩过时为1
+     *
+     * @return
+     */
+    public double getRatio() {
+        long raw = getRawBytes();
+        if (raw == 0) {
+            return 1D;
+        }
+        return (double) getCompressedBytes() / raw;
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.lunasaw.util.serializer;
+
+/**
+ * value的编码格式
+ * 二进制格式在数据前写入一个字节的格式标记, JSON不写标记, 以便历史数据和新格式在滚动发布期间并存
+ * 0x00 为空值标记, 0x02 为压缩标记
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public enum RedisCodec {
+
+    /**
+     * JSON文本 不带格式标记
+     */
+    JSON((byte) 0),
+
+    /**
+     * Jackson Smile 二进制JSON
+     */
+    SMILE((byte) 0x01),
+    ;
+
+    private final byte tag;
+
+    RedisCodec(byte tag) {
+        this.tag = tag;
+    }
+
+    public byte getTag() {
+        return tag;
+    }
+
+    /**
+     * 根据数据的首字节识别编码格式 无法识别的按JSON处理
+     *
+     * @param bytes 非空数据
+     * @return
+     */
+    public static RedisCodec detect(byte[] bytes) {
+        if (bytes[0] == SMILE.tag) {
+            return SMILE;
+        }
+        return JSON;
+    }
+}
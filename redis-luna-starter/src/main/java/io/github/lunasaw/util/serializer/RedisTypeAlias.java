@@ -0,0 +1,25 @@
+package io.github.lunasaw.util.serializer;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 为缓存对象指定简短的类型标识, 写入redis时代替完整类名
+ * 标注的类需要位于 luna.redis.serializer.type-alias-packages 或应用的自动配置包下
+ *
+ * @author luna
+ * 2026/10/17
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RedisTypeAlias {
+
+    /**
+     * 类型标识 全局唯一
+     */
+    String value();
+}
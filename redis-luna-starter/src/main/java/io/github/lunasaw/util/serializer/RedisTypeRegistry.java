@@ -0,0 +1,66 @@
+package io.github.lunasaw.util.serializer;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 类型标识注册表 类与简短标识一一对应
+ * 读写双方需要注册相同的标识, 未注册的类仍使用完整类名
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class RedisTypeRegistry {
+
+    private final Map<Class<?>, String> aliasMap = new ConcurrentHashMap<>();
+
+    private final Map<String, Class<?>> typeMap = new ConcurrentHashMap<>();
+
+    /**
+     * 注册类型标识
+     *
+     * @param alias 标识 不能为空
+     * @param type  类型
+     */
+    public synchronized void register(String alias, Class<?> type) {
+        if (StringUtils.isBlank(alias)) {
+            throw new IllegalArgumentException("redis type alias of " + type.getName() + " is blank");
+        }
+        Class<?> exist = typeMap.get(alias);
+        if (exist != null && exist != type) {
+            throw new IllegalStateException("redis type alias '" + alias + "' already registered by " + exist.getName());
+        }
+        String existAlias = aliasMap.get(type);
+        if (existAlias != null && !existAlias.equals(alias)) {
+            throw new IllegalStateException(type.getName() + " already registered as '" + existAlias + "'");
+        }
+        typeMap.put(alias, type);
+        aliasMap.put(type, alias);
+    }
+
+    /**
+     * 获取类型的标识
+     *
+     * @param type
+     * @return 未注册时返回null
+     */
+    public String getAlias(Class<?> type) {
+        return aliasMap.get(type);
+    }
+
+    /**
+     * 根据标识获取类型
+     *
+     * @param alias
+     * @return 未注册时返回null
+     */
+    public Class<?> getType(String alias) {
+        return typeMap.get(alias);
+    }
+
+    public boolean isEmpty() {
+        return typeMap.isEmpty();
+    }
+}
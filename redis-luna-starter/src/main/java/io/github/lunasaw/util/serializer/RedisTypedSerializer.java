@@ -0,0 +1,177 @@
+package io.github.lunasaw.util.serializer;
+
+import com.alibaba.fastjson.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按目标类型缓存的序列化器
+ * 读取时与写入使用相同的类型标识(按Object读取), 非泛型的目标类型直接返回, 其余类型通过不带类型标识的ObjectMapper转换,
+ * 不再经过fastjson的 Object -> JSON字符串 -> T
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class RedisTypedSerializer {
+
+    private final ObjectMapper objectMapper;
+
+    private final ObjectMapper smileMapper;
+
+    private final ObjectMapper convertMapper;
+
+    private final RedisCodec codec;
+
+    private final int compressThreshold;
+
+    private final CompressionStats compressionStats = new CompressionStats();
+
+    private final Map<Type, RedisSerializer<?>> serializerCache = new ConcurrentHashMap<>();
+
+    private final Map<Type, RedisSerializer<?>> nullValueSerializerCache = new ConcurrentHashMap<>();
+
+    /**
+     * @param objectMapper      JSON格式的ObjectMapper
+     * @param smileMapper       Smile格式的ObjectMapper 与objectMapper配置一致
+     * @param codec             写入时使用的格式
+     * @param compressThreshold 超过该字节数时压缩 小于等于0不压缩
+     */
+    public RedisTypedSerializer(ObjectMapper objectMapper, ObjectMapper smileMapper, RedisCodec codec, int compressThreshold) {
+        this.objectMapper = objectMapper;
+        this.smileMapper = smileMapper;
+        this.convertMapper = objectMapper.copy().deactivateDefaultTyping();
+        this.codec = codec;
+        this.compressThreshold = compressThreshold;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
+    /**
+     * 获取目标类型的序列化器, 每个类型只创建一次
+     *
+     * @param type 目标类型
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RedisSerializer<T> forType(Type type) {
+        return (RedisSerializer<T>) serializerCache.computeIfAbsent(type, t -> createSerializer(t, false));
+    }
+
+    /**
+     * 获取目标类型的序列化器
+     *
+     * @param type          目标类型
+     * @param keepNullValue 为true时空值标记读取为{@link org.springframework.cache.support.NullValue}, 否则只有目标类型可以接收时才返回, 其余返回null
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RedisSerializer<T> forType(Type type, boolean keepNullValue) {
+        if (!keepNullValue) {
+            return forType(type);
+        }
+        return (RedisSerializer<T>) nullValueSerializerCache.computeIfAbsent(type, t -> createSerializer(t, true));
+    }
+
+    /**
+     * 不压缩, 不计入压缩统计的序列化器 用于估算值的大小
+     *
+     * @return
+     */
+    public RedisSerializer<Object> uncompressed() {
+        return new CodecRedisSerializer<>(objectMapper.constructType(Object.class), codec, objectMapper, smileMapper, convertMapper, false);
+    }
+
+    /**
+     * 反序列化为目标类型
+     *
+     * @param bytes         redis中的原始值 为null时返回null
+     * @param typeReference 目标类型
+     * @return
+     */
+    public <T> T deserialize(byte[] bytes, TypeReference<T> typeReference) {
+        if (bytes == null) {
+            return null;
+        }
+        RedisSerializer<T> serializer = forType(typeReference.getType());
+        return serializer.deserialize(bytes);
+    }
+
+    /**
+     * 逐个反序列化元素, 忽略不存在的值
+     *
+     * @param values        redis中的原始值
+     * @param typeReference 元素类型
+     * @return
+     */
+    public <T> List<T> deserializeEach(List<byte[]> values, TypeReference<T> typeReference) {
+        RedisSerializer<T> serializer = forType(typeReference.getType());
+        List<T> list = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            T t = value == null ? null : serializer.deserialize(value);
+            if (t != null) {
+                list.add(t);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 将多个元素反序列化为集合或数组类型
+     *
+     * @param values        redis中的原始值
+     * @param typeReference 集合或数组类型
+     * @return 非集合和数组类型返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T deserializeCollection(List<byte[]> values, TypeReference<T> typeReference) {
+        JavaType javaType = objectMapper.constructType(typeReference.getType());
+        if (!javaType.isCollectionLikeType() && !javaType.isArrayType()) {
+            return null;
+        }
+        RedisSerializer<Object> serializer = forType(javaType.getContentType());
+        List<Object> list = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            list.add(value == null ? null : serializer.deserialize(value));
+        }
+
+        if (javaType.isArrayType()) {
+            Object array = Array.newInstance(javaType.getContentType().getRawClass(), list.size());
+            for (int i = 0; i < list.size(); i++) {
+                Array.set(array, i, list.get(i));
+            }
+            return (T) array;
+        }
+        Class<?> rawClass = javaType.getRawClass();
+        if (rawClass.isAssignableFrom(ArrayList.class)) {
+            return (T) list;
+        }
+        Collection<Object> collection = rawClass.isAssignableFrom(LinkedHashSet.class)
+                ? new LinkedHashSet<>(list.size())
+                : (Collection<Object>) BeanUtils.instantiateClass(rawClass);
+        collection.addAll(list);
+        return (T) collection;
+    }
+
+    private RedisSerializer<?> createSerializer(Type type, boolean keepNullValue) {
+        CodecRedisSerializer<Object> serializer = new CodecRedisSerializer<>(objectMapper.constructType(type), codec, objectMapper, smileMapper,
+            convertMapper, keepNullValue);
+        return new CompressionRedisSerializer<>(serializer, compressThreshold, compressionStats);
+    }
+}
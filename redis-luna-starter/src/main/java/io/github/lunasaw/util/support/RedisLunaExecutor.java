@@ -0,0 +1,86 @@
+package io.github.lunasaw.util.support;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 并行发送redis命令的有界线程池
+ * 队列满时由调用线程执行, 不会无限堆积任务
+ * 不以Executor类型注册为bean, 避免影响spring boot默认的任务线程池
+ *
+ * @author luna
+ * 2026/10/17
+ */
+public class RedisLunaExecutor implements DisposableBean {
+
+    /**
+     * 当前线程是否为本线程池的线程
+     */
+    private final ThreadLocal<Boolean> poolThread = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final ExecutorService executorService;
+
+    public RedisLunaExecutor(int threads, int queueCapacity) {
+        int size = Math.max(threads, 1);
+        this.executorService = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueCapacity, 1)),
+                new ThreadFactoryBuilder().setNameFormat("redis-luna-%d").setDaemon(true)
+                        .setThreadFactory(r -> new Thread(() -> {
+                            poolThread.set(Boolean.TRUE);
+                            r.run();
+                        })).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * 并行处理每个输入, 结果顺序与输入一致
+     * 只有一个输入或调用方已经是本线程池的线程时在调用线程执行, 避免线程池内任务互相等待而耗尽线程
+     *
+     * @param inputs   输入
+     * @param function 处理函数
+     * @return
+     */
+    public <T, R> List<R> map(List<T> inputs, Function<T, R> function) {
+        List<R> results = new ArrayList<>(inputs.size());
+        if (inputs.size() <= 1 || poolThread.get()) {
+            for (T input : inputs) {
+                results.add(function.apply(input));
+            }
+            return results;
+        }
+        List<CompletableFuture<R>> futures = new ArrayList<>(inputs.size());
+        for (T input : inputs) {
+            futures.add(CompletableFuture.supplyAsync(() -> function.apply(input), executorService));
+        }
+        try {
+            for (CompletableFuture<R> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    @Override
+    public void destroy() {
+        executorService.shutdown();
+    }
+}